@@ -17,27 +17,49 @@
 package org.alljoyn.onboarding.sdk;
 
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.alljoyn.about.AboutKeys;
 import org.alljoyn.about.AboutService;
 import org.alljoyn.about.transport.AboutTransport;
 import org.alljoyn.bus.BusAttachment;
 import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
 import org.alljoyn.bus.Status;
 import org.alljoyn.bus.Variant;
 import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.client.CapabilityAwareOnboardingClient;
+import org.alljoyn.onboarding.client.InstrumentedOnboardingClient;
+import org.alljoyn.onboarding.client.OnboardingCallMetrics;
+import org.alljoyn.onboarding.client.OnboardingCallTimeouts;
+import org.alljoyn.onboarding.client.OnboardingCapabilities;
+import org.alljoyn.onboarding.client.OnboardingCapabilities.Support;
+import org.alljoyn.onboarding.client.OnboardingCapabilityCache;
 import org.alljoyn.onboarding.client.OnboardingClient;
 import org.alljoyn.onboarding.client.OnboardingClientImpl;
+import org.alljoyn.onboarding.client.OnboardingDeadline;
+import org.alljoyn.onboarding.client.OnboardingDeadlineExceededException;
+import org.alljoyn.onboarding.client.OnboardingRetrier;
+import org.alljoyn.onboarding.client.OnboardingRetryMetrics;
+import org.alljoyn.onboarding.client.OnboardingRetryPolicy;
+import org.alljoyn.onboarding.client.OnboardingSessionPool;
+import org.alljoyn.onboarding.client.SessionLivenessMonitor;
 import org.alljoyn.onboarding.sdk.OnboardingManager.DeviceResponse.ResponseCode;
 import org.alljoyn.onboarding.transport.ConnectionResult;
 import org.alljoyn.onboarding.transport.ConnectionResultListener;
 import org.alljoyn.onboarding.transport.OnboardingTransport;
 import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+import org.alljoyn.onboarding.transport.ScanTable;
 import org.alljoyn.services.common.AnnouncementHandler;
 import org.alljoyn.services.common.BusObjectDescription;
 import org.alljoyn.services.common.ClientBase;
@@ -48,6 +70,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.wifi.WifiConfiguration;
 import android.os.Bundle;
 import android.os.Handler;
@@ -599,6 +622,28 @@ public class OnboardingManager {
      */
     public static final int DEFAULT_ANNOUNCEMENT_TIMEOUT = 25000;
 
+    /**
+     * Time budget for the AllJoyn calls that configure or offboard the
+     * onboardee {@value #DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT} msec. Shared by
+     * all the calls of the same step, retries and session rejoins included,
+     * so a dropped soft AP is reported within this time.
+     */
+    public static final int DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT = 10000;
+
+    /**
+     * Reply timeout of a single onboardee call
+     * {@value #DEFAULT_ONBOARDEE_CALL_TIMEOUT} msec. Below
+     * {@link #DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT}, so that the first call of
+     * a step is not bound by the remaining budget and a retry still fits.
+     */
+    public static final int DEFAULT_ONBOARDEE_CALL_TIMEOUT = DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT / 2;
+
+    /**
+     * Maximal number of attempts of an onboardee call that fails on a transient
+     * error {@value #DEFAULT_CONFIGURE_ONBOARDEE_ATTEMPTS}
+     */
+    public static final int DEFAULT_CONFIGURE_ONBOARDEE_ATTEMPTS = 3;
+
     /**
      * OnboardingManager singleton
      */
@@ -653,6 +698,60 @@ public class OnboardingManager {
      */
     private OnboardingClient onboardingClient = null;
 
+    /**
+     * The pooled client that {@link #onboardingClient} measures, released to
+     * the pool when done.
+     */
+    private OnboardingClient pooledOnboardingClient = null;
+
+    /**
+     * The latencies and outcomes of the calls made by {@link #onboardingClient}.
+     */
+    private final OnboardingCallMetrics callMetrics = new OnboardingCallMetrics();
+
+    /**
+     * The capabilities of the devices, learnt from announcements and earlier
+     * sessions, persisted in the {@value #CAPABILITIES_PREFERENCES} shared
+     * preferences.
+     */
+    private OnboardingCapabilityCache capabilityCache = null;
+
+    /**
+     * Name of the shared preferences that persist {@link #capabilityCache}
+     */
+    private static final String CAPABILITIES_PREFERENCES = "org.alljoyn.onboarding.sdk.capabilities";
+
+    /**
+     * The listener {@link #onboardingClient} was acquired with.
+     */
+    private ServiceAvailabilityListener onboardingClientListener = null;
+
+    /**
+     * Shares the sessions with the devices, so that a session that is still
+     * joined is reused instead of joined again.
+     */
+    private OnboardingSessionPool sessionPool = null;
+
+    /**
+     * Detects the loss of the session with the onboardee while it is being
+     * configured.
+     */
+    private SessionLivenessMonitor sessionLivenessMonitor = null;
+
+    /**
+     * Timer for the ConnectionResult signal in CONFIGURING_ONBOARDEE_WITH_SIGNAL
+     * state. Null when not waiting for the signal.
+     */
+    private Timer configWifiSignalTimeout = null;
+
+    /**
+     * Retries the onboardee calls that fail on transient errors, such as a
+     * reply timeout or a lost session, instead of failing the whole onboarding.
+     */
+    private final OnboardingRetrier onboardingRetrier = new OnboardingRetrier(new OnboardingRetryPolicy(DEFAULT_CONFIGURE_ONBOARDEE_ATTEMPTS, DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT,
+            OnboardingRetryPolicy.DEFAULT_ATTEMPT_TIMEOUT, OnboardingRetryPolicy.DEFAULT_INITIAL_BACKOFF, OnboardingRetryPolicy.DEFAULT_MAX_BACKOFF,
+            OnboardingRetryPolicy.getDefaultRetryableStatuses()), new OnboardingRetryMetrics());
+
     /**
      * Stores the BusAttachment needed for accessing Alljoyn framework.
      */
@@ -708,6 +807,11 @@ public class OnboardingManager {
             } else {
                 Log.d(TAG, "onAnnouncement: received UUID " + uniqueId);
             }
+            OnboardingCapabilityCache cache = capabilityCache;
+            if (cache != null) {
+                cache.onAnnouncement(uniqueId.toString(), (String) announceDataMap.get(AboutKeys.ABOUT_DEVICE_ID),
+                        isSeviceSupported(objectDescriptions, OnboardingTransport.INTERFACE_NAME));
+            }
 
             switch (currentState) {
             case ERROR_WAITING_FOR_ONBOARDEE_ANNOUNCEMENT:
@@ -821,6 +925,39 @@ public class OnboardingManager {
     }
 
 
+    /**
+     * Persists the {@link OnboardingCapabilityCache} in shared preferences.
+     */
+    private static class SharedPreferencesCapabilityStore implements OnboardingCapabilityCache.Store {
+        private final SharedPreferences preferences;
+
+        public SharedPreferencesCapabilityStore(SharedPreferences preferences) {
+            this.preferences = preferences;
+        }
+
+        @Override
+        public Map<String, String> load() {
+            Map<String, String> entries = new HashMap<String, String>();
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    entries.put(entry.getKey(), (String) entry.getValue());
+                }
+            }
+            return entries;
+        }
+
+        @Override
+        public void save(String key, String encoded) {
+            preferences.edit().putString(key, encoded).apply();
+        }
+
+        @Override
+        public void remove(String key) {
+            preferences.edit().remove(key).apply();
+        }
+    }
+
+
     /**
      * These enumeration values are used to indicate the current internal state
      * of the OnboardingManager state machine.
@@ -998,6 +1135,9 @@ public class OnboardingManager {
         this.context = context;
         this.onboardingSDKWifiManager = new OnboardingSDKWifiManager(this.context);
         this.bus = bus;
+        this.sessionPool = new OnboardingSessionPool(bus);
+        this.capabilityCache = new OnboardingCapabilityCache(new SharedPreferencesCapabilityStore(context.getSharedPreferences(CAPABILITIES_PREFERENCES, Context.MODE_PRIVATE)),
+                OnboardingCapabilityCache.DEFAULT_MAX_ENTRIES);
         this.aboutService=aboutService;
 
     }
@@ -1009,6 +1149,11 @@ public class OnboardingManager {
      */
     public void shutDown() throws OnboardingIllegalStateException {
         if (currentState==State.IDLE){
+            releaseOnboardingClient();
+            if (sessionPool!=null){
+                sessionPool.close();
+                sessionPool=null;
+            }
             this.context=null;
             this.bus=null;
             this.aboutService=null;
@@ -1219,16 +1364,23 @@ public class OnboardingManager {
     private void handleConfigureWithSignalOnboardeeState() {
 
         final Bundle extras = new Bundle();
-        final Timer configWifiSignalTimeout = new Timer();
+        final Timer signalTimeout = new Timer();
+        synchronized (this) {
+            configWifiSignalTimeout = signalTimeout;
+        }
         final ConnectionResultListener listener = new ConnectionResultListener() {
             @Override
             public void onConnectionResult(ConnectionResult connectionResult) {
                 Log.d(TAG, "onConnectionResult recevied " + connectionResult.getConnectionResponseType() + " " + connectionResult.getMessage());
-                configWifiSignalTimeout.cancel();
-                configWifiSignalTimeout.purge();
+                if (!stopConfigWifiSignalTimeout(signalTimeout)) {
+                    return;
+                }
+                setConnectionResultSignalSupport(Support.SUPPORTED);
                 try {
                     onboardingClient.unRegisterConnectionResultListener(this);
                     if (connectionResult.getConnectionResponseType() == ConnectionResult.ConnectionResponseType.VALIDATED) {
+                        // the onboardee leaves the soft AP, losing the session is expected
+                        stopSessionLivenessMonitor();
                         onboardingClient.connectWiFi();
                         extras.clear();
                         extras.putString(EXTRA_ONBOARDING_STATE, OnboardingState.CONFIGURED_ONBOARDEE.toString());
@@ -1250,14 +1402,15 @@ public class OnboardingManager {
         };
 
         try {
-            configWifiSignalTimeout.schedule(new TimerTask() {
+            signalTimeout.schedule(new TimerTask() {
                 @Override
                 public void run() {
                     Log.e(TAG, "configWifiSignalTimeout  expired");
+                    if (!stopConfigWifiSignalTimeout(signalTimeout)) {
+                        return;
+                    }
                     onboardingClient.unRegisterConnectionResultListener(listener);
-                    configWifiSignalTimeout.cancel();
-                    configWifiSignalTimeout.purge();
-                    onboardingClient.unRegisterConnectionResultListener(listener);
+                    setConnectionResultSignalSupport(Support.UNSUPPORTED);
                     extras.putString(EXTRA_ERROR_DETAILS, OnboardingErrorType.CONFIGURING_ONBOARDEE_WAITING_FOR_SIGNAL_TIMEOUT.toString());
                     sendBroadcast(ERROR, extras);
                     setState(State.ERROR_WAITING_FOR_CONFIGURE_SIGNAL);
@@ -1266,9 +1419,8 @@ public class OnboardingManager {
             onboardingClient.registerConnectionResultListener(listener);
         } catch (Exception e) {
             Log.e(TAG, "registerConnectionResultListener", e);
-            if (configWifiSignalTimeout != null) {
-                configWifiSignalTimeout.cancel();
-                configWifiSignalTimeout.purge();
+            if (!stopConfigWifiSignalTimeout(signalTimeout)) {
+                return;
             }
             extras.putString(EXTRA_ERROR_DETAILS, OnboardingErrorType.ERROR_CONFIGURING_ONBOARDEE.toString());
             sendBroadcast(ERROR, extras);
@@ -1602,19 +1754,18 @@ public class OnboardingManager {
                 return new DeviceResponse(ResponseCode.Status_ERROR, "announceData.getPort() == 0");
             }
 
-            if (onboardingClient!=null){
-                onboardingClient.disconnect();
-                onboardingClient=null;
-            }
-
-            onboardingClient = new OnboardingClientImpl(announceData.getServiceName(), bus, new ServiceAvailabilityListener() {
+            acquireOnboardingClient(announceData.getServiceName(), announceData.getPort(), deviceData, new ServiceAvailabilityListener() {
                 @Override
                 public void connectionLost() {
-                    // expected. we are onboarding the device, hence sending
-                    // it the another network.
+                    // expected once the device was sent to the other network,
+                    // the liveness monitor is stopped by then.
                     Log.d(TAG, "establishSessionWithDevice connectionLost");
+                    SessionLivenessMonitor monitor = sessionLivenessMonitor;
+                    if (monitor != null) {
+                        monitor.connectionLost();
+                    }
                 }
-            }, announceData.getPort());
+            });
         } catch (Exception e) {
             Log.e(TAG, "establishSessionWithDevice Exception: ", e);
             return new DeviceResponse(ResponseCode.Status_ERROR);
@@ -1625,6 +1776,7 @@ public class OnboardingManager {
             if (connectToDeviceStatus != ResponseCode.Status_OK) {
                 return new DeviceResponse(ResponseCode.Status_ERROR_CANT_ESTABLISH_SESSION, connectToDeviceStatus.name());
             }
+            startSessionLivenessMonitor();
             return new DeviceResponse(ResponseCode.Status_OK);
         } catch (Exception e) {
             Log.e(TAG, "establishSessionWithDevice ", e);
@@ -1640,8 +1792,10 @@ public class OnboardingManager {
      * @return status of operation.
      */
     private DeviceResponse onboardDevice() {
+        final OnboardingDeadline flowDeadline = new OnboardingDeadline(DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT);
         try {
-            AuthType authType = onboardingConfiguration.getTarget().getAuthType();
+            final AuthType authType = onboardingConfiguration.getTarget().getAuthType();
+            final String ssid = onboardingConfiguration.getTarget().getSSID();
             boolean isPasswordHex = false;
             String passForConfigureNetwork = onboardingConfiguration.getTarget().getPassword();
             if (authType == AuthType.WEP) {
@@ -1655,16 +1809,37 @@ public class OnboardingManager {
             }
             Log.i(TAG, "before configureWiFi networkName = " + onboardingConfiguration.getTarget().getSSID() + " networkPass = " + passForConfigureNetwork + " selectedAuthType = "
                     + onboardingConfiguration.getTarget().getAuthType().getTypeId());
-            ConfigureWifiMode res=onboardingClient.configureWiFi(onboardingConfiguration.getTarget().getSSID(), passForConfigureNetwork, onboardingConfiguration.getTarget().getAuthType());
+            final String pass = passForConfigureNetwork;
+            ConfigureWifiMode res = onboardingRetrier.run(new OnboardingRetrier.Operation<ConfigureWifiMode>() {
+                @Override
+                public ConfigureWifiMode attempt(OnboardingDeadline deadline) throws BusException {
+                    restoreSessionWithDevice(true, deadline);
+                    return onboardingClient.configureWiFi(ssid, pass, authType, deadline);
+                }
+            }, flowDeadline);
             Log.i(TAG, "configureWiFi result="+res);
+            if (res == ConfigureWifiMode.FAST_CHANNNEL && getDeviceCapabilities().getConnectionResultSignal() == Support.UNSUPPORTED) {
+                // the device repeatedly didn't send the ConnectionResult signal, don't wait for it
+                Log.i(TAG, "onboardDevice device doesn't send ConnectionResult, connecting as in regular mode");
+                res = ConfigureWifiMode.REGULAR;
+            }
             if (res==ConfigureWifiMode.REGULAR){
-                onboardingClient.connectWiFi();
+                // the onboardee leaves the soft AP, losing the session is expected
+                stopSessionLivenessMonitor();
+                onboardingRetrier.run(new OnboardingRetrier.Operation<Void>() {
+                    @Override
+                    public Void attempt(OnboardingDeadline deadline) throws BusException {
+                        restoreSessionWithDevice(false, deadline);
+                        onboardingClient.connectWiFi(deadline);
+                        return null;
+                    }
+                }, flowDeadline);
                 return new DeviceResponse(ResponseCode.Status_OK);
             }else{
                 return new DeviceResponse(ResponseCode.Status_OK_CONNECT_SECOND_PHASE);
             }
         } catch (BusException e) {
-            Log.e(TAG, "onboarddDevice ", e);
+            Log.e(TAG, "onboarddDevice " + onboardingRetrier.getMetrics() + " " + callMetrics, e);
             return new DeviceResponse(ResponseCode.Status_ERROR);
         } catch (Exception e) {
             Log.e(TAG, "onboarddDevice ", e);
@@ -1688,19 +1863,14 @@ public class OnboardingManager {
         extras.putString(EXTRA_ONBOARDING_STATE, OnboardingState.JOINING_SESSION.toString());
         sendBroadcast(STATE_CHANGE_ACTION, extras);
 
-        if (onboardingClient!=null){
-            onboardingClient.disconnect();
-            onboardingClient=null;
-        }
-
         try {
-            onboardingClient = new OnboardingClientImpl(serviceName, bus, new ServiceAvailabilityListener() {
+            acquireOnboardingClient(serviceName, port, null, new ServiceAvailabilityListener() {
                 @Override
                 public void connectionLost() {
                     // expected. we are offboarding the device...
                     Log.d(TAG, "offboardDevice connectionLost");
                 }
-            }, port);
+            });
         } catch (Exception e) {
             Log.e(TAG, "offboardDevice Exception: ", e);
             return new DeviceResponse(ResponseCode.Status_ERROR);
@@ -1725,7 +1895,14 @@ public class OnboardingManager {
             extras.putString(EXTRA_ONBOARDING_STATE, OnboardingState.CONFIGURING_ONBOARDEE.toString());
             sendBroadcast(STATE_CHANGE_ACTION, extras);
 
-            onboardingClient.offboard();
+            onboardingRetrier.run(new OnboardingRetrier.Operation<Void>() {
+                @Override
+                public Void attempt(OnboardingDeadline deadline) throws BusException {
+                    restoreSessionWithDevice(false, deadline);
+                    onboardingClient.offboard(deadline);
+                    return null;
+                }
+            }, new OnboardingDeadline(DEFAULT_CONFIGURE_ONBOARDEE_TIMEOUT));
 
             extras.clear();
             extras.putString(EXTRA_DEVICE_BUS_NAME, serviceName);
@@ -1734,7 +1911,7 @@ public class OnboardingManager {
 
             return new DeviceResponse(ResponseCode.Status_OK);
         } catch (BusException e) {
-            Log.e(TAG, "offboardDevice ", e);
+            Log.e(TAG, "offboardDevice " + onboardingRetrier.getMetrics(), e);
             return new DeviceResponse(ResponseCode.Status_ERROR);
         } catch (Exception e) {
             Log.e(TAG, "offboardDevice ", e);
@@ -1743,6 +1920,205 @@ public class OnboardingManager {
     }
 
 
+    /**
+     * Acquire the pooled client of the device, in place of the current one.
+     * The session of the device is reused if it is still joined. Its calls
+     * reply within {@link #DEFAULT_ONBOARDEE_CALL_TIMEOUT}. The calls
+     * made by the client are measured into {@link #callMetrics}. The
+     * capabilities of an identified device are consulted and recorded in
+     * {@link #capabilityCache}.
+     *
+     * @param serviceName device's service name
+     * @param port device's application port
+     * @param device the AppId and DeviceId of the device, or null if not known
+     * @param listener notified of the loss of the session
+     */
+    private void acquireOnboardingClient(String serviceName, short port, DeviceData device, ServiceAvailabilityListener listener) {
+        releaseOnboardingClient();
+        pooledOnboardingClient = sessionPool.acquire(serviceName, port, listener);
+        if (pooledOnboardingClient instanceof OnboardingClientImpl) {
+            ((OnboardingClientImpl) pooledOnboardingClient).setCallTimeouts(new OnboardingCallTimeouts(DEFAULT_ONBOARDEE_CALL_TIMEOUT));
+        }
+        OnboardingClient client = pooledOnboardingClient;
+        if (device != null && device.getAppUUID() != null) {
+            client = new CapabilityAwareOnboardingClient(client, capabilityCache, device.getAppUUID().toString(), device.getDeviceID());
+        }
+        onboardingClient = new InstrumentedOnboardingClient(client, callMetrics);
+        onboardingClientListener = listener;
+    }
+
+
+    /**
+     * Release the current client to the pool, which leaves its session once idle.
+     */
+    private void releaseOnboardingClient() {
+        stopSessionLivenessMonitor();
+        if (pooledOnboardingClient != null) {
+            sessionPool.release(pooledOnboardingClient, onboardingClientListener);
+            pooledOnboardingClient = null;
+            onboardingClient = null;
+            onboardingClientListener = null;
+        }
+    }
+
+
+    /**
+     * Start monitoring the session with the onboardee, so that its loss during
+     * JOINING_SESSION, CONFIGURING_ONBOARDEE or CONFIGURING_ONBOARDEE_WITH_SIGNAL
+     * is handled within {@link SessionLivenessMonitor#getDetectionWindow()}
+     * instead of waiting for AllJoyn call timeouts.
+     */
+    private void startSessionLivenessMonitor() {
+        stopSessionLivenessMonitor();
+        SessionLivenessMonitor monitor = new SessionLivenessMonitor(bus, onboardingClient, new SessionLivenessMonitor.SessionLostListener() {
+            @Override
+            public void onSessionLost(ClientBase client, String reason) {
+                handleSessionLost(client, reason);
+            }
+        });
+        sessionLivenessMonitor = monitor;
+        monitor.start();
+        Log.d(TAG, "startSessionLivenessMonitor linkTimeout=" + monitor.getGrantedLinkTimeout() + " detectionWindow=" + monitor.getDetectionWindow());
+    }
+
+
+    /**
+     * Stop monitoring the session with the onboardee, before it is expected to be lost.
+     */
+    private void stopSessionLivenessMonitor() {
+        SessionLivenessMonitor monitor = sessionLivenessMonitor;
+        if (monitor != null) {
+            monitor.stop();
+            sessionLivenessMonitor = null;
+        }
+    }
+
+
+    /**
+     * Handle the loss of the session with the onboardee, reported by the
+     * {@link SessionLivenessMonitor} thread. A blocking call of
+     * JOINING_SESSION or CONFIGURING_ONBOARDEE state is made to fail now by
+     * leaving the session. CONFIGURING_ONBOARDEE_WITH_SIGNAL state stops
+     * waiting for the signal, which can no longer arrive.
+     *
+     * @param client the client whose session was lost
+     * @param reason how the loss was detected
+     */
+    private void handleSessionLost(ClientBase client, String reason) {
+        Log.e(TAG, "handleSessionLost in state " + currentState + ": " + reason);
+        switch (currentState) {
+        case JOINING_SESSION:
+        case CONFIGURING_ONBOARDEE:
+            client.disconnect();
+            break;
+
+        case CONFIGURING_ONBOARDEE_WITH_SIGNAL:
+            Timer signalTimeout;
+            synchronized (this) {
+                signalTimeout = configWifiSignalTimeout;
+            }
+            if (signalTimeout == null || !stopConfigWifiSignalTimeout(signalTimeout)) {
+                return;
+            }
+            client.disconnect();
+            Bundle extras = new Bundle();
+            extras.putString(EXTRA_ERROR_DETAILS, OnboardingErrorType.ERROR_CONFIGURING_ONBOARDEE.toString());
+            sendBroadcast(ERROR, extras);
+            setState(State.ERROR_CONFIGURING_ONBOARDEE);
+            break;
+
+        default:
+            break;
+        }
+    }
+
+
+    /**
+     * Stop waiting for the ConnectionResult signal. Only the first of the
+     * signal, its timeout and the session loss may move the state machine on.
+     *
+     * @param signalTimeout the timer of the wait
+     * @return true if the caller stopped the wait, false if it was already stopped
+     */
+    private synchronized boolean stopConfigWifiSignalTimeout(Timer signalTimeout) {
+        signalTimeout.cancel();
+        signalTimeout.purge();
+        if (configWifiSignalTimeout != signalTimeout) {
+            return false;
+        }
+        configWifiSignalTimeout = null;
+        return true;
+    }
+
+
+    /**
+     * Join the session with the onboardee again if it was lost, before
+     * retrying a call.
+     *
+     * @param monitorSession whether to monitor the new session with a {@link SessionLivenessMonitor}
+     * @param deadline the time budget of the attempt, the join must complete within it
+     * @throws BusException if the session can't be joined. Retried when the
+     *             device is unreachable. {@link OnboardingDeadlineExceededException}
+     *             if the join doesn't complete before the deadline.
+     */
+    private void restoreSessionWithDevice(boolean monitorSession, OnboardingDeadline deadline) throws BusException {
+        SessionLivenessMonitor monitor = sessionLivenessMonitor;
+        boolean isSessionLost = monitor != null && monitor.isSessionLost();
+        if (onboardingClient.isConnected() && !isSessionLost) {
+            return;
+        }
+        Log.d(TAG, "restoreSessionWithDevice: joining the session again");
+        if (isSessionLost) {
+            onboardingClient.disconnect();
+        }
+        Status status = joinSession(onboardingClient, deadline);
+        if (status != Status.OK && status != Status.ALLJOYN_JOINSESSION_REPLY_ALREADY_JOINED) {
+            throw new ErrorReplyBusException(status);
+        }
+        if (monitorSession) {
+            startSessionLivenessMonitor();
+        }
+    }
+
+
+    /**
+     * Join a session with the onboardee, waiting no longer than the deadline.
+     * JoinSession has no timeout of its own, so it is run on a thread of its
+     * own. A join that completes after the deadline leaves the session
+     * joined, it is reused by the next attempt.
+     *
+     * @param client the client of the onboardee
+     * @param deadline the time budget of the join
+     * @return the status of the join
+     * @throws BusException {@link OnboardingDeadlineExceededException} if the
+     *             join doesn't complete before the deadline
+     */
+    private static Status joinSession(final OnboardingClient client, OnboardingDeadline deadline) throws BusException {
+        if (deadline.isExpired()) {
+            throw new OnboardingDeadlineExceededException("Deadline expired before JoinSession");
+        }
+        FutureTask<Status> join = new FutureTask<Status>(new Callable<Status>() {
+            @Override
+            public Status call() {
+                return client.connect();
+            }
+        });
+        Thread thread = new Thread(join, "OnboardingJoinSession");
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            return join.get(deadline.getRemainingTime(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new OnboardingDeadlineExceededException("JoinSession has not completed before the deadline");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusException("JoinSession has been interrupted");
+        } catch (ExecutionException e) {
+            throw new BusException("JoinSession has failed: " + e.getCause());
+        }
+    }
+
+
     /**
      * Start an AllJoyn session with another Alljoyn device.
      *
@@ -1839,6 +2215,74 @@ public class OnboardingManager {
     }
 
 
+    /**
+     * Rank the target networks by joining the scan of the onboardee with the
+     * last scan of the handset, see {@link TargetNetworkRecommender}. The
+     * first recommendation that {@link TargetNetworkRecommendation#isReachableByDevice()}
+     * makes a target for {@link OnboardingConfiguration} that the onboardee can reach.
+     *
+     * @param deviceScan the scan of the onboardee, from {@link OnboardingClient#getScanTable()}
+     * @return every target network seen by the onboardee or the handset, best first
+     */
+    public List<TargetNetworkRecommendation> getTargetRecommendations(ScanTable deviceScan) {
+        return TargetNetworkRecommender.recommend(deviceScan, getWifiScanResults(WifiFilter.TARGET));
+    }
+
+
+    /**
+     * @return the counters of the retried onboardee calls, among which how
+     *         many operations were saved by a retry
+     */
+    public OnboardingRetryMetrics getRetryMetrics() {
+        return onboardingRetrier.getMetrics();
+    }
+
+
+    /**
+     * @return the known capabilities of the device being onboarded
+     */
+    private OnboardingCapabilities getDeviceCapabilities() {
+        DeviceData device = deviceData;
+        if (capabilityCache == null || device == null || device.getAppUUID() == null) {
+            return OnboardingCapabilities.UNKNOWN;
+        }
+        return capabilityCache.get(device.getAppUUID().toString(), device.getDeviceID());
+    }
+
+
+    /**
+     * Record whether the device being onboarded sent the ConnectionResult
+     * signal in fast channel mode, so that a device that repeatedly doesn't
+     * is not waited for again.
+     *
+     * @param support whether the signal arrived in time
+     */
+    private void setConnectionResultSignalSupport(Support support) {
+        DeviceData device = deviceData;
+        if (capabilityCache != null && device != null && device.getAppUUID() != null) {
+            capabilityCache.setConnectionResultSignal(device.getAppUUID().toString(), device.getDeviceID(), support);
+        }
+    }
+
+
+    /**
+     * @return the capabilities of the devices, learnt from their
+     *         announcements and from earlier sessions
+     */
+    public OnboardingCapabilityCache getCapabilityCache() {
+        return capabilityCache;
+    }
+
+
+    /**
+     * @return the latency histograms, outcome counts and in-flight gauges of
+     *         the calls made to the onboardees
+     */
+    public OnboardingCallMetrics getCallMetrics() {
+        return callMetrics;
+    }
+
+
     /**
      * @return the current Wi-Fi network that the Android device is connected to.
      * @throws WifiDisabledException in case Wi-Fi is disabled.
@@ -2129,6 +2573,7 @@ public class OnboardingManager {
      */
     private void abortStateCleanUp(){
 
+        stopSessionLivenessMonitor();
         if (onboardingConfiguration!=null && onboardingConfiguration.getOnboardee()!=null && onboardingConfiguration.getOnboardee().getSSID()!=null){
             onboardingSDKWifiManager.removeWifiAP(onboardingConfiguration.getOnboardee().getSSID());
         }
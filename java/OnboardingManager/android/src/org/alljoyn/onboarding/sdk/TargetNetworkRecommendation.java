@@ -0,0 +1,173 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.sdk;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+
+/**
+ * A candidate target network, as seen by the onboardee and by the handset.
+ * Made by {@link TargetNetworkRecommender}.
+ */
+public class TargetNetworkRecommendation {
+
+    /**
+     * The signal level of a network the handset didn't see
+     */
+    public static final int NO_LEVEL = Integer.MIN_VALUE;
+
+    /**
+     * Wi-Fi SSID name
+     */
+    private final String SSID;
+
+    /**
+     * The authentication type the onboardee reported, null if it didn't see the network
+     */
+    private final AuthType deviceAuthType;
+
+    /**
+     * The authentication type the handset derived from the capabilities, null if it didn't see the network
+     */
+    private final AuthType phoneAuthType;
+
+    /**
+     * The signal level the handset measured, {@link #NO_LEVEL} if it didn't see the network
+     */
+    private final int phoneLevel;
+
+    /**
+     * Constructor
+     *
+     * @param SSID {@link #SSID}
+     * @param deviceAuthType {@link #deviceAuthType}
+     * @param phoneAuthType {@link #phoneAuthType}
+     * @param phoneLevel {@link #phoneLevel}
+     */
+    public TargetNetworkRecommendation(String SSID, AuthType deviceAuthType, AuthType phoneAuthType, int phoneLevel) {
+        this.SSID = SSID;
+        this.deviceAuthType = deviceAuthType;
+        this.phoneAuthType = phoneAuthType;
+        this.phoneLevel = phoneLevel;
+    }
+
+    /**
+     * @return the SSID of the network {@link #SSID}
+     */
+    public String getSSID() {
+        return SSID;
+    }
+
+    /**
+     * @return the authentication type the onboardee reported {@link #deviceAuthType}
+     */
+    public AuthType getDeviceAuthType() {
+        return deviceAuthType;
+    }
+
+    /**
+     * @return the authentication type the handset reported {@link #phoneAuthType}
+     */
+    public AuthType getPhoneAuthType() {
+        return phoneAuthType;
+    }
+
+    /**
+     * @return the signal level the handset measured {@link #phoneLevel}
+     */
+    public int getPhoneLevel() {
+        return phoneLevel;
+    }
+
+    /**
+     * @return true if the onboardee reported the network in its scan
+     */
+    public boolean isReachableByDevice() {
+        return deviceAuthType != null;
+    }
+
+    /**
+     * @return true if the handset saw the network
+     */
+    public boolean isSeenByPhone() {
+        return phoneAuthType != null;
+    }
+
+    /**
+     * @return true unless the onboardee and the handset report authentication
+     *         types of different families, such as WPA and WPA2
+     */
+    public boolean isAuthCompatible() {
+        return isAuthCompatible(deviceAuthType, phoneAuthType);
+    }
+
+    /**
+     * @return the authentication type to send to the onboardee: the one it
+     *         reported, or else the one the handset reported, or else
+     *         {@link AuthType#ANY}
+     */
+    public AuthType getAuthType() {
+        if (deviceAuthType != null) {
+            return deviceAuthType;
+        }
+        return phoneAuthType != null ? phoneAuthType : AuthType.ANY;
+    }
+
+    /**
+     * @param password the password of the network
+     * @return a target for {@link OnboardingConfiguration}
+     */
+    public WiFiNetworkConfiguration toWiFiNetworkConfiguration(String password) {
+        return new WiFiNetworkConfiguration(SSID, getAuthType(), password);
+    }
+
+    /**
+     * @param first an authentication type, null if not known
+     * @param second an authentication type, null if not known
+     * @return false if both are known and of different families
+     */
+    static boolean isAuthCompatible(AuthType first, AuthType second) {
+        if (first == null || second == null || first == AuthType.ANY || second == AuthType.ANY) {
+            return true;
+        }
+        return getAuthFamily(first) == getAuthFamily(second);
+    }
+
+    /**
+     * @param authType an authentication type
+     * @return the representative of the family: {@link AuthType#WPA_AUTO} for
+     *         all the WPA types, {@link AuthType#WPA2_AUTO} for all the WPA2
+     *         types, the type itself otherwise
+     */
+    private static AuthType getAuthFamily(AuthType authType) {
+        switch (authType) {
+        case WPA_TKIP:
+        case WPA_CCMP:
+            return AuthType.WPA_AUTO;
+        case WPA2_TKIP:
+        case WPA2_CCMP:
+            return AuthType.WPA2_AUTO;
+        default:
+            return authType;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TargetNetworkRecommendation [SSID=" + SSID + ", deviceAuthType=" + deviceAuthType + ", phoneAuthType=" + phoneAuthType + ", phoneLevel=" + phoneLevel + "]";
+    }
+}
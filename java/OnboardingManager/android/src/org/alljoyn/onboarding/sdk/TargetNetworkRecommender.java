@@ -0,0 +1,125 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * Ranks the candidate target networks by joining what the onboardee sees,
+ * from {@link org.alljoyn.onboarding.client.OnboardingClient#getScanTable()},
+ * with what the handset sees, from
+ * {@link OnboardingManager#getWifiScanResults(OnboardingManager.WifiFilter)}.
+ * Networks are ranked by:
+ * <ol>
+ * <li>reachability from the onboardee: networks it reported come first,</li>
+ * <li>authentication compatibility: networks for which the onboardee and the
+ * handset agree on the authentication family come first,</li>
+ * <li>the signal level measured by the handset, strongest first.</li>
+ * </ol>
+ * Picking a recommended target avoids onboarding the device to a network it
+ * can't reach, which otherwise only fails once the target announcement times
+ * out.
+ */
+public class TargetNetworkRecommender {
+
+    /**
+     * Orders the recommendations from best to worst
+     */
+    private static final Comparator<TargetNetworkRecommendation> RANKING = new Comparator<TargetNetworkRecommendation>() {
+        @Override
+        public int compare(TargetNetworkRecommendation lhs, TargetNetworkRecommendation rhs) {
+            if (lhs.isReachableByDevice() != rhs.isReachableByDevice()) {
+                return lhs.isReachableByDevice() ? -1 : 1;
+            }
+            if (lhs.isAuthCompatible() != rhs.isAuthCompatible()) {
+                return lhs.isAuthCompatible() ? -1 : 1;
+            }
+            // compared rather than subtracted, NO_LEVEL would overflow
+            return lhs.getPhoneLevel() > rhs.getPhoneLevel() ? -1 : (lhs.getPhoneLevel() == rhs.getPhoneLevel() ? 0 : 1);
+        }
+    };
+
+    private TargetNetworkRecommender() {
+    }
+
+    /**
+     * Join the scans of the onboardee and of the handset, and rank the networks.
+     *
+     * @param deviceScan the scan of the onboardee, null if not available
+     * @param phoneScan the target networks seen by the handset, null if not available
+     * @return every network seen by either side, best first
+     */
+    public static List<TargetNetworkRecommendation> recommend(ScanTable deviceScan, List<WiFiNetwork> phoneScan) {
+        Map<String, WiFiNetwork> phoneNetworks = new LinkedHashMap<String, WiFiNetwork>();
+        if (phoneScan != null) {
+            for (WiFiNetwork network : phoneScan) {
+                if (network.getSSID() != null && !phoneNetworks.containsKey(network.getSSID())) {
+                    phoneNetworks.put(network.getSSID(), network);
+                }
+            }
+        }
+
+        List<TargetNetworkRecommendation> recommendations = new ArrayList<TargetNetworkRecommendation>();
+        if (deviceScan != null) {
+            Set<String> deviceSsids = new HashSet<String>();
+            for (int i = 0; i < deviceScan.size(); ++i) {
+                String ssid = deviceScan.getSsid(i);
+                // a scan may report the same SSID for several access points
+                if (ssid == null || !deviceSsids.add(ssid)) {
+                    continue;
+                }
+                AuthType deviceAuthType = deviceScan.getAuthTypeEnum(i);
+                if (deviceAuthType == null) {
+                    deviceAuthType = AuthType.ANY;
+                }
+                WiFiNetwork phoneNetwork = phoneNetworks.remove(ssid);
+                recommendations.add(phoneNetwork == null ? new TargetNetworkRecommendation(ssid, deviceAuthType, null, TargetNetworkRecommendation.NO_LEVEL)
+                        : new TargetNetworkRecommendation(ssid, deviceAuthType, phoneNetwork.getAuthType(), phoneNetwork.getLevel()));
+            }
+        }
+        for (WiFiNetwork phoneNetwork : phoneNetworks.values()) {
+            recommendations.add(new TargetNetworkRecommendation(phoneNetwork.getSSID(), null, phoneNetwork.getAuthType(), phoneNetwork.getLevel()));
+        }
+
+        Collections.sort(recommendations, RANKING);
+        return recommendations;
+    }
+
+    /**
+     * @param deviceScan the scan of the onboardee, null if not available
+     * @param phoneScan the target networks seen by the handset, null if not available
+     * @return the best network the onboardee can reach, or null if it reported none
+     */
+    public static TargetNetworkRecommendation recommendBest(ScanTable deviceScan, List<WiFiNetwork> phoneScan) {
+        List<TargetNetworkRecommendation> recommendations = recommend(deviceScan, phoneScan);
+        if (recommendations.isEmpty() || !recommendations.get(0).isReachableByDevice()) {
+            return null;
+        }
+        return recommendations.get(0);
+    }
+}
@@ -82,14 +82,34 @@ public interface OnboardingService
 		 * @return authentication type
 		 */
 		public static AuthType getAuthTypeById(short typeId) {
-			AuthType retType = null;
-			for (AuthType type : AuthType.values()) {
-				if ( typeId == type.getTypeId() ) {
-					retType = type;
-					break;
-				}
+			int index = typeId - MIN_TYPE_ID;
+			return index >= 0 && index < TYPES_BY_ID.length ? TYPES_BY_ID[index] : null;
+		}
+
+		/**
+		 * The lowest type id
+		 */
+		private static final short MIN_TYPE_ID;
+
+		/**
+		 * The authentication types indexed by type id - {@link #MIN_TYPE_ID},
+		 * so that decoding doesn't scan nor copy {@link #values()}
+		 */
+		private static final AuthType[] TYPES_BY_ID;
+
+		static {
+			AuthType[] types = values();
+			short min = types[0].id;
+			short max = types[0].id;
+			for (AuthType type : types) {
+				min = (short) Math.min(min, type.id);
+				max = (short) Math.max(max, type.id);
+			}
+			MIN_TYPE_ID = min;
+			TYPES_BY_ID = new AuthType[max - min + 1];
+			for (AuthType type : types) {
+				TYPES_BY_ID[type.id - min] = type;
 			}
-			return retType;
 		}
 		
 	}
@@ -139,14 +159,25 @@ public interface OnboardingService
 		 * @return onboarding state
 		 */
 		public static OnboardingState getStateById(short stateId) {
-			OnboardingState retState = null;
-			for (OnboardingState state : OnboardingState.values()) {
-				if ( stateId == state.getStateId() ) {
-					retState = state;
-					break;
-				}
+			return stateId >= 0 && stateId < STATES_BY_ID.length ? STATES_BY_ID[stateId] : null;
+		}
+
+		/**
+		 * The states indexed by state id, so that decoding doesn't scan nor
+		 * copy {@link #values()}. The ids are small and not negative.
+		 */
+		private static final OnboardingState[] STATES_BY_ID;
+
+		static {
+			OnboardingState[] states = values();
+			short max = 0;
+			for (OnboardingState state : states) {
+				max = (short) Math.max(max, state.id);
+			}
+			STATES_BY_ID = new OnboardingState[max + 1];
+			for (OnboardingState state : states) {
+				STATES_BY_ID[state.id] = state;
 			}
-			return retState;
 		}
 		
 	}
@@ -0,0 +1,191 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.Status;
+import org.alljoyn.onboarding.client.OnboardingClient;
+import org.alljoyn.onboarding.client.OnboardingClientImpl;
+import org.alljoyn.onboarding.server.ConnectionResultEmitter;
+import org.alljoyn.onboarding.server.OnboardingServer;
+import org.alljoyn.onboarding.server.OnboardingStore;
+import org.alljoyn.onboarding.server.WifiBackend;
+import org.alljoyn.onboarding.transport.OnboardingTransport;
+import org.alljoyn.services.common.ServiceAvailabilityListener;
+
+/**
+ * The Java implementation of the {@link OnboardingService}. In server mode
+ * (onboardee) an {@link OnboardingServer} backed by the given
+ * {@link WifiBackend} is registered on the bus. In client mode (onboarder)
+ * {@link OnboardingClient}s are created for the peer onboardees.
+ */
+public class OnboardingServiceImpl implements OnboardingService {
+
+    /**
+     * Does the Wi-Fi operations in server mode, null for client mode only
+     */
+    private final WifiBackend wifiBackend;
+
+    /**
+     * Keeps the onboarding across restarts in server mode, null if not kept
+     */
+    private final OnboardingStore store;
+
+    /**
+     * The bus of server mode, null if not started
+     */
+    private BusAttachment serverBus = null;
+
+    /**
+     * The registered onboardee, null if not started
+     */
+    private OnboardingServer server = null;
+
+    private ExecutorService commandExecutor = null;
+    private ExecutorService scanExecutor = null;
+
+    /**
+     * The bus of client mode, null if not started
+     */
+    private BusAttachment clientBus = null;
+
+    /**
+     * Constructor, for client mode only
+     */
+    public OnboardingServiceImpl() {
+        this(null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wifiBackend does the Wi-Fi operations in server mode. A
+     *            {@link org.alljoyn.onboarding.server.FastChannelWifiBackend}
+     *            enables the fast channel mode.
+     */
+    public OnboardingServiceImpl(WifiBackend wifiBackend) {
+        this(wifiBackend, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wifiBackend does the Wi-Fi operations in server mode. A
+     *            {@link org.alljoyn.onboarding.server.FastChannelWifiBackend}
+     *            enables the fast channel mode.
+     * @param store keeps the onboarding across restarts in server mode, null not to keep it
+     */
+    public OnboardingServiceImpl(WifiBackend wifiBackend, OnboardingStore store) {
+        this.wifiBackend = wifiBackend;
+        this.store = store;
+    }
+
+    /**
+     * @return the onboarding state of the onboardee, null if server mode isn't started
+     */
+    @Override
+    public synchronized OnboardingState getState() {
+        return server != null ? server.getOnboardingState() : null;
+    }
+
+    @Override
+    public synchronized void startOnboardingServer(BusAttachment busAttachment) throws Exception {
+        if (busAttachment == null) {
+            throw new IllegalArgumentException("busAttachment must not be null");
+        }
+        if (wifiBackend == null) {
+            throw new IllegalStateException("server mode needs a WifiBackend");
+        }
+        if (server != null) {
+            throw new IllegalStateException("the onboarding server is already started");
+        }
+        ExecutorService commands = newWorker("OnboardingCommands");
+        ExecutorService scans = newWorker("OnboardingScan");
+        OnboardingServer newServer = new OnboardingServer(wifiBackend, commands, scans);
+        newServer.setConnectionResultEmitter(new ConnectionResultEmitter(busAttachment, newServer));
+        newServer.setStore(store);
+        // the stored onboarding is restored before the first call can be received
+        newServer.start();
+        Status status = busAttachment.registerBusObject(newServer, OnboardingTransport.OBJ_PATH);
+        if (status != Status.OK) {
+            commands.shutdownNow();
+            scans.shutdownNow();
+            throw new BusException("registerBusObject " + OnboardingTransport.OBJ_PATH + " has failed, Status: '" + status + "'");
+        }
+        serverBus = busAttachment;
+        server = newServer;
+        commandExecutor = commands;
+        scanExecutor = scans;
+    }
+
+    @Override
+    public synchronized void stopOnboardingServer() throws Exception {
+        if (server == null) {
+            return;
+        }
+        serverBus.unregisterBusObject(server);
+        // a queued Connect or Offboard still runs, nothing new is accepted
+        commandExecutor.shutdown();
+        scanExecutor.shutdownNow();
+        server = null;
+        serverBus = null;
+        commandExecutor = null;
+        scanExecutor = null;
+    }
+
+    @Override
+    public synchronized OnboardingClient createOnboardingClient(String deviceName, ServiceAvailabilityListener serviceAvailabilityListener, short port) throws Exception {
+        if (clientBus == null) {
+            throw new IllegalStateException("client mode isn't started");
+        }
+        return new OnboardingClientImpl(deviceName, clientBus, serviceAvailabilityListener, port);
+    }
+
+    @Override
+    public synchronized void startOnboardingClient(BusAttachment bus) throws Exception {
+        if (bus == null) {
+            throw new IllegalArgumentException("bus must not be null");
+        }
+        clientBus = bus;
+    }
+
+    @Override
+    public synchronized void stopOnboardingClient() {
+        clientBus = null;
+    }
+
+    /**
+     * @param name the name of the thread
+     * @return a single daemon thread executor
+     */
+    private static ExecutorService newWorker(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,335 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+import org.alljoyn.onboarding.transport.ScanInfo;
+
+/**
+ * Runs the blocking {@link OnboardingClient} calls on a bounded executor, so
+ * the caller isn't parked for a full AllJoyn round trip. Every call returns a
+ * {@link Future} and may optionally report its outcome to a
+ * {@link ResultCallback}. Independent calls, for example {@link #getState()},
+ * {@link #getLastError()} and {@link #getScanInfo()}, may be in flight at the
+ * same time as long as the executor has free threads.
+ */
+public class AsyncOnboardingClient {
+
+    /**
+     * Default number of worker threads of the executor created by {@link #AsyncOnboardingClient(OnboardingClient)}
+     */
+    public static final int DEFAULT_POOL_SIZE = 3;
+
+    /**
+     * Default number of calls that may wait for a free worker thread
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * A callback for receiving the outcome of an asynchronous call.
+     * Invoked on the executor thread that performed the call.
+     *
+     * @param <T> the type of the call result
+     */
+    public static interface ResultCallback<T> {
+
+        /**
+         * The call completed successfully
+         * @param result the call result, null for calls that have no result
+         */
+        public void onSuccess(T result);
+
+        /**
+         * The call has failed
+         * @param error typically a {@link org.alljoyn.bus.BusException}
+         */
+        public void onFailure(Throwable error);
+    }
+
+    /**
+     * The wrapped synchronous client
+     */
+    private final OnboardingClient onboardingClient;
+
+    /**
+     * Runs the calls
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Whether the executor was created by this class and should be shut down by {@link #shutdown()}
+     */
+    private final boolean ownsExecutor;
+
+    /**
+     * Constructor. Creates a bounded executor of {@value #DEFAULT_POOL_SIZE}
+     * threads and a queue of {@value #DEFAULT_QUEUE_CAPACITY} calls.
+     *
+     * @param onboardingClient the client that performs the AllJoyn calls
+     */
+    public AsyncOnboardingClient(OnboardingClient onboardingClient) {
+        this(onboardingClient, createBoundedExecutor(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY), true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param onboardingClient the client that performs the AllJoyn calls
+     * @param executor runs the calls. The executor is owned by the caller,
+     *            and isn't shut down by {@link #shutdown()}
+     */
+    public AsyncOnboardingClient(OnboardingClient onboardingClient, ExecutorService executor) {
+        this(onboardingClient, executor, false);
+    }
+
+    private AsyncOnboardingClient(OnboardingClient onboardingClient, ExecutorService executor, boolean ownsExecutor) {
+        if (onboardingClient == null || executor == null) {
+            throw new IllegalArgumentException("onboardingClient and executor must not be null");
+        }
+        this.onboardingClient = onboardingClient;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Create an executor with a fixed number of daemon threads and a bounded
+     * queue. When the queue is full, new calls are rejected with
+     * {@link RejectedExecutionException} rather than piling up behind a slow
+     * soft AP link.
+     *
+     * @param poolSize number of worker threads
+     * @param queueCapacity number of calls that may wait for a worker thread
+     * @return the executor
+     */
+    public static ExecutorService createBoundedExecutor(int poolSize, int queueCapacity) {
+        if (poolSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("poolSize and queueCapacity must be positive");
+        }
+        final AtomicInteger threadNumber = new AtomicInteger(1);
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AsyncOnboardingClient-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @return the wrapped synchronous client
+     */
+    public OnboardingClient getOnboardingClient() {
+        return onboardingClient;
+    }
+
+    /**
+     * @see OnboardingClient#getVersion()
+     */
+    public Future<Short> getVersion() {
+        return getVersion(null);
+    }
+
+    /**
+     * @param callback optional callback for the result
+     * @see OnboardingClient#getVersion()
+     */
+    public Future<Short> getVersion(ResultCallback<Short> callback) {
+        return submit(new Callable<Short>() {
+            @Override
+            public Short call() throws Exception {
+                return onboardingClient.getVersion();
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#getState()
+     */
+    public Future<Short> getState() {
+        return getState(null);
+    }
+
+    /**
+     * @param callback optional callback for the result
+     * @see OnboardingClient#getState()
+     */
+    public Future<Short> getState(ResultCallback<Short> callback) {
+        return submit(new Callable<Short>() {
+            @Override
+            public Short call() throws Exception {
+                return onboardingClient.getState();
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#GetLastError()
+     */
+    public Future<OBLastError> getLastError() {
+        return getLastError(null);
+    }
+
+    /**
+     * @param callback optional callback for the result
+     * @see OnboardingClient#GetLastError()
+     */
+    public Future<OBLastError> getLastError(ResultCallback<OBLastError> callback) {
+        return submit(new Callable<OBLastError>() {
+            @Override
+            public OBLastError call() throws Exception {
+                return onboardingClient.GetLastError();
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#getScanInfo()
+     */
+    public Future<ScanInfo> getScanInfo() {
+        return getScanInfo(null);
+    }
+
+    /**
+     * @param callback optional callback for the result
+     * @see OnboardingClient#getScanInfo()
+     */
+    public Future<ScanInfo> getScanInfo(ResultCallback<ScanInfo> callback) {
+        return submit(new Callable<ScanInfo>() {
+            @Override
+            public ScanInfo call() throws Exception {
+                return onboardingClient.getScanInfo();
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#configureWiFi(String, String, AuthType)
+     */
+    public Future<ConfigureWifiMode> configureWiFi(String ssid, String passphrase, AuthType authType) {
+        return configureWiFi(ssid, passphrase, authType, null);
+    }
+
+    /**
+     * @param callback optional callback for the result
+     * @see OnboardingClient#configureWiFi(String, String, AuthType)
+     */
+    public Future<ConfigureWifiMode> configureWiFi(final String ssid, final String passphrase, final AuthType authType, ResultCallback<ConfigureWifiMode> callback) {
+        return submit(new Callable<ConfigureWifiMode>() {
+            @Override
+            public ConfigureWifiMode call() throws Exception {
+                return onboardingClient.configureWiFi(ssid, passphrase, authType);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#connectWiFi()
+     */
+    public Future<Void> connectWiFi() {
+        return connectWiFi(null);
+    }
+
+    /**
+     * @param callback optional callback for the completion
+     * @see OnboardingClient#connectWiFi()
+     */
+    public Future<Void> connectWiFi(ResultCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                onboardingClient.connectWiFi();
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see OnboardingClient#offboard()
+     */
+    public Future<Void> offboard() {
+        return offboard(null);
+    }
+
+    /**
+     * @param callback optional callback for the completion
+     * @see OnboardingClient#offboard()
+     */
+    public Future<Void> offboard(ResultCallback<Void> callback) {
+        return submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                onboardingClient.offboard();
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Shut down the executor if it was created by this class. Calls that are
+     * already running are allowed to complete.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Submit the call to the executor.
+     *
+     * @param call the blocking call
+     * @param callback optional callback for the outcome
+     * @return the Future of the call
+     * @throws RejectedExecutionException if the executor can't accept more calls
+     */
+    private <T> Future<T> submit(Callable<T> call, final ResultCallback<T> callback) {
+        FutureTask<T> task = new FutureTask<T>(call) {
+            @Override
+            protected void done() {
+                if (callback == null || isCancelled()) {
+                    return;
+                }
+                try {
+                    callback.onSuccess(get());
+                } catch (ExecutionException e) {
+                    callback.onFailure(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+}
@@ -0,0 +1,286 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.Executor;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
+import org.alljoyn.bus.Status;
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.client.OnboardingCapabilities.Support;
+import org.alljoyn.onboarding.transport.ConnectionResultListener;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+import org.alljoyn.onboarding.transport.ScanInfo;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * An {@link OnboardingClient} that consults and fills an
+ * {@link OnboardingCapabilityCache} for the calls of another client. The
+ * Version property is read from the device once while it is cached, and
+ * GetScanInfo is not sent to a device that the cache takes as not supporting
+ * it after repeated FeatureNotAvailable answers. The answers
+ * of ConfigureWiFi are recorded as well.
+ */
+public class CapabilityAwareOnboardingClient implements OnboardingClient {
+
+    /**
+     * The AllJoyn error name of an unsupported optional method
+     */
+    public static final String FEATURE_NOT_AVAILABLE = "org.alljoyn.Error.FeatureNotAvailable";
+
+    private final OnboardingClient delegate;
+    private final OnboardingCapabilityCache cache;
+    private final String appId;
+    private final String deviceId;
+
+    /**
+     * Constructor
+     *
+     * @param delegate the client that makes the calls
+     * @param cache the capabilities of the devices
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     */
+    public CapabilityAwareOnboardingClient(OnboardingClient delegate, OnboardingCapabilityCache cache, String appId, String deviceId) {
+        if (delegate == null || cache == null || appId == null) {
+            throw new IllegalArgumentException("delegate, cache and appId must not be null");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.appId = appId;
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * @return the client that makes the calls
+     */
+    public OnboardingClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the known capabilities of the device
+     */
+    public OnboardingCapabilities getCapabilities() {
+        return cache.get(appId, deviceId);
+    }
+
+    @Override
+    public Status connect() {
+        return delegate.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public String getPeerName() {
+        return delegate.getPeerName();
+    }
+
+    @Override
+    public int getSessionId() {
+        return delegate.getSessionId();
+    }
+
+    /**
+     * Returns the cached interface version, read from the device if unknown
+     */
+    @Override
+    public short getVersion() throws BusException {
+        short version = getCapabilities().getVersion();
+        if (version == OnboardingCapabilities.UNKNOWN_VERSION) {
+            version = delegate.getVersion();
+            cache.setVersion(appId, deviceId, version);
+        }
+        return version;
+    }
+
+    /**
+     * Returns the cached interface version, read from the device if unknown
+     */
+    @Override
+    public short getVersion(OnboardingDeadline deadline) throws BusException {
+        short version = getCapabilities().getVersion();
+        if (version == OnboardingCapabilities.UNKNOWN_VERSION) {
+            version = delegate.getVersion(deadline);
+            cache.setVersion(appId, deviceId, version);
+        }
+        return version;
+    }
+
+    @Override
+    public short getState() throws BusException {
+        return delegate.getState();
+    }
+
+    @Override
+    public short getState(OnboardingDeadline deadline) throws BusException {
+        return delegate.getState(deadline);
+    }
+
+    @Override
+    public OBLastError GetLastError() throws BusException {
+        return delegate.GetLastError();
+    }
+
+    @Override
+    public OBLastError GetLastError(OnboardingDeadline deadline) throws BusException {
+        return delegate.GetLastError(deadline);
+    }
+
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot() throws BusException {
+        OnboardingStatusSnapshot snapshot = delegate.getStatusSnapshot();
+        cache.setVersion(appId, deviceId, snapshot.getVersion());
+        return snapshot;
+    }
+
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot(OnboardingDeadline deadline) throws BusException {
+        OnboardingStatusSnapshot snapshot = delegate.getStatusSnapshot(deadline);
+        cache.setVersion(appId, deviceId, snapshot.getVersion());
+        return snapshot;
+    }
+
+    @Override
+    public ConfigureWifiMode configureWiFi(String ssid, String passphrase, AuthType authType) throws BusException {
+        ConfigureWifiMode mode = delegate.configureWiFi(ssid, passphrase, authType);
+        cache.setLastConfigureWifiMode(appId, deviceId, mode);
+        return mode;
+    }
+
+    @Override
+    public ConfigureWifiMode configureWiFi(String ssid, String passphrase, AuthType authType, OnboardingDeadline deadline) throws BusException {
+        ConfigureWifiMode mode = delegate.configureWiFi(ssid, passphrase, authType, deadline);
+        cache.setLastConfigureWifiMode(appId, deviceId, mode);
+        return mode;
+    }
+
+    @Override
+    public void connectWiFi() throws BusException {
+        delegate.connectWiFi();
+    }
+
+    @Override
+    public void connectWiFi(OnboardingDeadline deadline) throws BusException {
+        delegate.connectWiFi(deadline);
+    }
+
+    @Override
+    public void offboard() throws BusException {
+        delegate.offboard();
+    }
+
+    @Override
+    public void offboard(OnboardingDeadline deadline) throws BusException {
+        delegate.offboard(deadline);
+    }
+
+    /**
+     * Fails without a round trip if the device is known not to support GetScanInfo
+     */
+    @Override
+    public ScanInfo getScanInfo() throws BusException {
+        checkScanInfoSupported();
+        try {
+            ScanInfo scanInfo = delegate.getScanInfo();
+            cache.setScanInfo(appId, deviceId, Support.SUPPORTED);
+            return scanInfo;
+        } catch (BusException e) {
+            recordScanInfoFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails without a round trip if the device is known not to support GetScanInfo
+     */
+    @Override
+    public ScanInfo getScanInfo(OnboardingDeadline deadline) throws BusException {
+        checkScanInfoSupported();
+        try {
+            ScanInfo scanInfo = delegate.getScanInfo(deadline);
+            cache.setScanInfo(appId, deviceId, Support.SUPPORTED);
+            return scanInfo;
+        } catch (BusException e) {
+            recordScanInfoFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails without a round trip if the device is known not to support GetScanInfo
+     */
+    @Override
+    public ScanTable getScanTable() throws BusException {
+        checkScanInfoSupported();
+        try {
+            ScanTable scanTable = delegate.getScanTable();
+            cache.setScanInfo(appId, deviceId, Support.SUPPORTED);
+            return scanTable;
+        } catch (BusException e) {
+            recordScanInfoFailure(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void registerConnectionResultListener(ConnectionResultListener listener) throws BusException {
+        delegate.registerConnectionResultListener(listener);
+    }
+
+    @Override
+    public void registerConnectionResultListener(ConnectionResultListener listener, Executor executor) throws BusException {
+        delegate.registerConnectionResultListener(listener, executor);
+    }
+
+    @Override
+    public void unRegisterConnectionResultListener(ConnectionResultListener listener) {
+        delegate.unRegisterConnectionResultListener(listener);
+    }
+
+    /**
+     * @throws ErrorReplyBusException
+     *             {@link #FEATURE_NOT_AVAILABLE}, as the device would reply,
+     *             if it is known not to support GetScanInfo
+     */
+    private void checkScanInfoSupported() throws ErrorReplyBusException {
+        if (getCapabilities().getScanInfo() == Support.UNSUPPORTED) {
+            throw new ErrorReplyBusException(FEATURE_NOT_AVAILABLE, "GetScanInfo is not supported by the device, as cached");
+        }
+    }
+
+    /**
+     * @param e the failure of a GetScanInfo call
+     */
+    private void recordScanInfoFailure(BusException e) {
+        if (e instanceof ErrorReplyBusException && FEATURE_NOT_AVAILABLE.equals(((ErrorReplyBusException) e).getErrorName())) {
+            cache.setScanInfo(appId, deviceId, Support.UNSUPPORTED);
+        }
+    }
+}
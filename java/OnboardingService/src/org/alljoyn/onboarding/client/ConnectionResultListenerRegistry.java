@@ -0,0 +1,259 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alljoyn.onboarding.transport.ConnectionResult;
+import org.alljoyn.onboarding.transport.ConnectionResultListener;
+
+/**
+ * Fans out ConnectionResult signal data to any number of
+ * {@link ConnectionResultListener}s without blocking the AllJoyn signal
+ * dispatch thread. Each listener has its own bounded queue and is called on
+ * its own {@link Executor}, or on a shared dispatcher thread if it has none.
+ * A listener is called serially, in signal order. When a listener falls
+ * behind and its queue is full, signals are dropped according to its
+ * {@link OverflowPolicy}.
+ */
+public class ConnectionResultListenerRegistry implements ConnectionResultListener {
+
+    /**
+     * Default number of signals that may wait for a listener
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * What to do with a signal when the listener's queue is full
+     */
+    public static enum OverflowPolicy {
+
+        /**
+         * Drop the incoming signal
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest queued signal to make room for the incoming one
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Used for listeners that were registered without an executor
+     */
+    private static ExecutorService defaultExecutor = null;
+
+    /**
+     * The registered listeners. Iterated without locking on every signal.
+     */
+    private final CopyOnWriteArrayList<Registration> registrations = new CopyOnWriteArrayList<Registration>();
+
+    /**
+     * Number of signals dropped across all the listeners
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * A registered listener with its queue and executor
+     */
+    private class Registration implements Runnable {
+        private final ConnectionResultListener listener;
+        private final Executor executor;
+        private final BlockingQueue<ConnectionResult> queue;
+        private final OverflowPolicy overflowPolicy;
+
+        /**
+         * Whether a drain of the queue is scheduled on the executor
+         */
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+        private Registration(ConnectionResultListener listener, Executor executor, int queueCapacity, OverflowPolicy overflowPolicy) {
+            this.listener = listener;
+            this.executor = executor;
+            this.queue = new ArrayBlockingQueue<ConnectionResult>(queueCapacity);
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        /**
+         * Queue the signal data and schedule a drain if needed. Never blocks.
+         *
+         * @param connectionResult the signal data
+         */
+        private void offer(ConnectionResult connectionResult) {
+            while (!queue.offer(connectionResult)) {
+                if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+                if (queue.poll() != null) {
+                    droppedCount.incrementAndGet();
+                }
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (isScheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    isScheduled.set(false);
+                    droppedCount.addAndGet(queue.size());
+                    queue.clear();
+                }
+            }
+        }
+
+        /**
+         * Deliver the queued signal data to the listener
+         */
+        @Override
+        public void run() {
+            try {
+                ConnectionResult connectionResult;
+                while ((connectionResult = queue.poll()) != null) {
+                    if (!registrations.contains(this)) {
+                        queue.clear();
+                        return;
+                    }
+                    listener.onConnectionResult(connectionResult);
+                }
+            } finally {
+                isScheduled.set(false);
+                // signal data may have arrived after the last poll
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
+    /**
+     * Register a listener called on the shared dispatcher thread, with a
+     * queue of {@value #DEFAULT_QUEUE_CAPACITY} signals that drops the oldest
+     * signal when full.
+     *
+     * @param listener receives the signal data
+     */
+    public void addListener(ConnectionResultListener listener) {
+        addListener(listener, null);
+    }
+
+    /**
+     * Register a listener with a queue of {@value #DEFAULT_QUEUE_CAPACITY}
+     * signals that drops the oldest signal when full.
+     *
+     * @param listener receives the signal data
+     * @param executor calls the listener. If null the shared dispatcher thread is used.
+     */
+    public void addListener(ConnectionResultListener listener, Executor executor) {
+        addListener(listener, executor, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Register a listener. A listener that is already registered is
+     * re-registered with the new parameters.
+     *
+     * @param listener receives the signal data
+     * @param executor calls the listener. If null the shared dispatcher thread is used.
+     * @param queueCapacity number of signals that may wait for the listener
+     * @param overflowPolicy what to do with a signal when the queue is full
+     */
+    public void addListener(ConnectionResultListener listener, Executor executor, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (listener == null || overflowPolicy == null) {
+            throw new IllegalArgumentException("listener and overflowPolicy must not be null");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        if (executor == null) {
+            executor = getDefaultExecutor();
+        }
+        synchronized (registrations) {
+            removeListener(listener);
+            registrations.add(new Registration(listener, executor, queueCapacity, overflowPolicy));
+        }
+    }
+
+    /**
+     * Unregister a listener. Signal data still queued for it is discarded.
+     *
+     * @param listener the listener to unregister
+     * @return true if the listener was registered
+     */
+    public boolean removeListener(ConnectionResultListener listener) {
+        synchronized (registrations) {
+            for (Registration registration : registrations) {
+                if (registration.listener == listener) {
+                    return registrations.remove(registration);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if no listener is registered
+     */
+    public boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    /**
+     * @return number of signals dropped because a listener's queue was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Queue the signal data for every registered listener. Never blocks.
+     */
+    @Override
+    public void onConnectionResult(ConnectionResult connectionResult) {
+        for (Registration registration : registrations) {
+            registration.offer(connectionResult);
+        }
+    }
+
+    /**
+     * @return the shared dispatcher, created on first use
+     */
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ConnectionResultDispatcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+}
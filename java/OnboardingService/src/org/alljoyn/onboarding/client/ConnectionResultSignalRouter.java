@@ -0,0 +1,339 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.BusObject;
+import org.alljoyn.bus.MessageContext;
+import org.alljoyn.bus.Status;
+import org.alljoyn.bus.annotation.BusSignalHandler;
+import org.alljoyn.onboarding.transport.ConnectionResult;
+import org.alljoyn.onboarding.transport.ConnectionResult.ConnectionResponseType;
+import org.alljoyn.onboarding.transport.ConnectionResultAJ;
+import org.alljoyn.onboarding.transport.ConnectionResultListener;
+import org.alljoyn.onboarding.transport.OnboardingTransport;
+
+/**
+ * Routes the ConnectionResult signals received by a {@link BusAttachment} to
+ * the {@link OnboardingClient} of the onboardee that sent them. A single
+ * signal handler is registered per BusAttachment, no matter how many clients
+ * listen, and each signal is dispatched by a lookup of the sender bus name
+ * followed by a scan of its few sessions. A match rule is added per tracked
+ * sender, and signals of senders or sessions that aren't tracked are dropped.
+ * A router exists only while it has routes: with its last route it
+ * unregisters its handler and is dropped, releasing its BusAttachment.
+ * <p>
+ * The dispatch allocates nothing beyond what AllJoyn unmarshals: the lookup
+ * needs no key object, and a signal equal to the previous one of its route
+ * is delivered as the same immutable {@link ConnectionResult}.
+ */
+public class ConnectionResultSignalRouter {
+
+    /**
+     * Used to register the bus object upon the bus attachment
+     */
+    private final static String CONNECTION_RESULT_PATH = "/OnboardingTranport/ConnectionResult";
+
+    /**
+     * The router of each BusAttachment that has routes. Also guards the
+     * registrations of all the routers, so that a router isn't dropped while
+     * a route is being added to it.
+     */
+    private final static Map<BusAttachment, ConnectionResultSignalRouter> routers = new IdentityHashMap<BusAttachment, ConnectionResultSignalRouter>();
+
+    /**
+     * The BusAttachment that receives the signals
+     */
+    private final BusAttachment bus;
+
+    /**
+     * Receives the signals of all the senders
+     */
+    private final ConnectionResultReceiver receiver = new ConnectionResultReceiver();
+
+    /**
+     * The routes of each sender, one per session. The arrays are replaced,
+     * never modified, so that the signal handler reads them without locking.
+     */
+    private final Map<String, Route[]> routes = new ConcurrentHashMap<String, Route[]>();
+
+    /**
+     * Number of routes across all the senders
+     */
+    private int routeCount = 0;
+
+    /**
+     * Whether the receiver is currently registered on the bus
+     */
+    private boolean isReceiverRegistered = false;
+
+    /**
+     * The listener of a session with a sender
+     */
+    private static class Route {
+        private final int sessionId;
+        private final ConnectionResultListener listener;
+
+        /**
+         * The last signal data delivered on this route, reused when the next
+         * signal is equal to it
+         */
+        private volatile ConnectionResult lastResult = null;
+
+        private Route(int sessionId, ConnectionResultListener listener) {
+            this.sessionId = sessionId;
+            this.listener = listener;
+        }
+
+        /**
+         * @param type the decoded response type
+         * @param message the message of the signal
+         * @return the signal data, the previous one if equal
+         */
+        private ConnectionResult getResult(ConnectionResponseType type, String message) {
+            ConnectionResult result = lastResult;
+            if (result == null || result.getConnectionResponseType() != type || !(message == null ? result.getMessage() == null : message.equals(result.getMessage()))) {
+                result = new ConnectionResult(type, message);
+                lastResult = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Internal class used for receiving the ConnectionResult signal of all the senders.
+     * Dispatches the signal data to the listener registered for the sender and session.
+     */
+    private class ConnectionResultReceiver implements BusObject {
+        @BusSignalHandler(iface = OnboardingTransport.INTERFACE_NAME, signal = "ConnectionResult")
+        public void ConnectionResult(ConnectionResultAJ connectionResultAJ) {
+            MessageContext messageContext = bus.getMessageContext();
+            if (messageContext == null || messageContext.sender == null) {
+                return;
+            }
+            Route route = findRoute(routes.get(messageContext.sender), messageContext.sessionId);
+            if (route == null) {
+                return;
+            }
+            ConnectionResult.ConnectionResponseType connectionResponseType = ConnectionResult.ConnectionResponseType.getConnectionResponseTypeByValue(connectionResultAJ.code);
+            if (connectionResponseType == null) {
+                connectionResponseType = ConnectionResponseType.ERROR_MESSAGE;
+            }
+            route.listener.onConnectionResult(route.getResult(connectionResponseType, connectionResultAJ.message));
+        }
+    }
+
+    /**
+     * Returns the router of the given BusAttachment, or a new one that
+     * becomes the router of the BusAttachment with its first route
+     *
+     * @param bus the BusAttachment that receives the signals
+     * @return the router of the BusAttachment
+     */
+    public static ConnectionResultSignalRouter getInstance(BusAttachment bus) {
+        if (bus == null) {
+            throw new IllegalArgumentException("bus must not be null");
+        }
+        synchronized (routers) {
+            ConnectionResultSignalRouter router = routers.get(bus);
+            return router != null ? router : new ConnectionResultSignalRouter(bus);
+        }
+    }
+
+    private ConnectionResultSignalRouter(BusAttachment bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Route the ConnectionResult signals of the given sender and session to
+     * the listener. Replaces a listener that was previously registered for
+     * the same sender and session.
+     *
+     * @param sender the unique bus name of the onboardee
+     * @param sessionId the session id with the onboardee
+     * @param listener receives the signal data
+     * @throws BusException if registering the signal handler or the match rule fails
+     */
+    public void register(String sender, int sessionId, ConnectionResultListener listener) throws BusException {
+        if (sender == null || listener == null) {
+            throw new IllegalArgumentException("sender and listener must not be null");
+        }
+        synchronized (routers) {
+            ConnectionResultSignalRouter current = routers.get(bus);
+            if (current != null && current != this) {
+                // the bus got another router since this one was returned
+                current.register(sender, sessionId, listener);
+                return;
+            }
+            registerRoute(sender, sessionId, listener);
+        }
+    }
+
+    /**
+     * Called with the routers lock held
+     */
+    private void registerRoute(String sender, int sessionId, ConnectionResultListener listener) throws BusException {
+        registerReceiver();
+        routers.put(bus, this);
+
+        Route[] senderRoutes = routes.get(sender);
+        if (senderRoutes == null) {
+            Status status = bus.addMatch(getMatchRule(sender));
+            if (status != Status.OK) {
+                releaseReceiverIfUnused();
+                throw new BusException("addMatch for sender '" + sender + "' has failed, Status: '" + status + "'");
+            }
+            senderRoutes = new Route[0];
+        }
+
+        Route route = new Route(sessionId, listener);
+        for (int i = 0; i < senderRoutes.length; ++i) {
+            if (senderRoutes[i].sessionId == sessionId) {
+                Route[] replaced = senderRoutes.clone();
+                replaced[i] = route;
+                routes.put(sender, replaced);
+                return;
+            }
+        }
+        Route[] added = Arrays.copyOf(senderRoutes, senderRoutes.length + 1);
+        added[senderRoutes.length] = route;
+        routes.put(sender, added);
+        ++routeCount;
+    }
+
+    /**
+     * Stop routing the ConnectionResult signals of the given sender and session
+     *
+     * @param sender the unique bus name of the onboardee
+     * @param sessionId the session id with the onboardee
+     */
+    public void unregister(String sender, int sessionId) {
+        synchronized (routers) {
+            ConnectionResultSignalRouter current = routers.get(bus);
+            if (current != null) {
+                current.unregisterRoute(sender, sessionId);
+            }
+        }
+    }
+
+    /**
+     * Called with the routers lock held
+     */
+    private void unregisterRoute(String sender, int sessionId) {
+        Route[] senderRoutes = sender == null ? null : routes.get(sender);
+        Route route = findRoute(senderRoutes, sessionId);
+        if (route == null) {
+            return;
+        }
+
+        --routeCount;
+        if (senderRoutes.length == 1) {
+            routes.remove(sender);
+            bus.removeMatch(getMatchRule(sender));
+        } else {
+            Route[] removed = new Route[senderRoutes.length - 1];
+            int j = 0;
+            for (Route other : senderRoutes) {
+                if (other != route) {
+                    removed[j++] = other;
+                }
+            }
+            routes.put(sender, removed);
+        }
+        releaseReceiverIfUnused();
+    }
+
+    /**
+     * @return the number of registered routes
+     */
+    public int getRouteCount() {
+        synchronized (routers) {
+            return routeCount;
+        }
+    }
+
+    /**
+     * @param senderRoutes the routes of a sender, or null if none
+     * @param sessionId the session id
+     * @return the route of the session, or null if none
+     */
+    private static Route findRoute(Route[] senderRoutes, int sessionId) {
+        if (senderRoutes != null) {
+            for (Route route : senderRoutes) {
+                if (route.sessionId == sessionId) {
+                    return route;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Register the receiver bus object and its signal handler, once per BusAttachment.
+     * Called with the routers lock held.
+     *
+     * @throws BusException if the registration fails
+     */
+    private void registerReceiver() throws BusException {
+        if (isReceiverRegistered) {
+            return;
+        }
+
+        Status status = bus.registerBusObject(receiver, CONNECTION_RESULT_PATH);
+        if (status != Status.OK) {
+            throw new BusException("registerBusObject  " + CONNECTION_RESULT_PATH + " signal handler has failed, Status: '" + status + "'");
+        }
+
+        status = bus.registerSignalHandlers(receiver);
+        if (status != Status.OK) {
+            bus.unregisterBusObject(receiver);
+            throw new BusException("registerSignalHandlers  " + CONNECTION_RESULT_PATH + " signal handler has failed, Status: '" + status + "'");
+        }
+        isReceiverRegistered = true;
+    }
+
+    /**
+     * Unregister the receiver and drop the router when there are no more routes
+     */
+    private void releaseReceiverIfUnused() {
+        if (!routes.isEmpty()) {
+            return;
+        }
+        if (isReceiverRegistered) {
+            bus.unregisterSignalHandlers(receiver);
+            bus.unregisterBusObject(receiver);
+            isReceiverRegistered = false;
+        }
+        if (routers.get(bus) == this) {
+            routers.remove(bus);
+        }
+    }
+
+    /**
+     * @param sender the unique bus name of the onboardee
+     * @return the match rule for the ConnectionResult signals of the sender
+     */
+    private static String getMatchRule(String sender) {
+        return "type='signal',interface='" + OnboardingTransport.INTERFACE_NAME + "',member='ConnectionResult',sender='" + sender + "'";
+    }
+}
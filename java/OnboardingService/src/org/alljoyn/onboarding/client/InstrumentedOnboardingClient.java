@@ -0,0 +1,342 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.Executor;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
+import org.alljoyn.bus.Status;
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.client.OnboardingCallTimeouts.Call;
+import org.alljoyn.onboarding.transport.ConnectionResultListener;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+import org.alljoyn.onboarding.transport.ScanInfo;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * An {@link OnboardingClient} that measures the org.alljoyn.Onboarding calls
+ * of another client and reports them to an {@link OnboardingMetricsSink}: the
+ * latency and outcome of every call, and the number of ongoing calls of each
+ * kind. {@link #getScanTable()} is reported as {@link Call#GET_SCAN_INFO}.
+ * The session calls are delegated without being measured.
+ */
+public class InstrumentedOnboardingClient implements OnboardingClient {
+
+    /**
+     * The outcome of a successful call
+     */
+    public static final String OUTCOME_OK = "OK";
+
+    /**
+     * The outcome of a call that failed with an unchecked exception
+     */
+    public static final String OUTCOME_UNCHECKED = "UNCHECKED";
+
+    private final OnboardingClient delegate;
+    private final OnboardingMetricsSink sink;
+
+    /**
+     * Constructor
+     *
+     * @param delegate the client that makes the calls
+     * @param sink receives the measurements
+     */
+    public InstrumentedOnboardingClient(OnboardingClient delegate, OnboardingMetricsSink sink) {
+        if (delegate == null || sink == null) {
+            throw new IllegalArgumentException("delegate and sink must not be null");
+        }
+        this.delegate = delegate;
+        this.sink = sink;
+    }
+
+    /**
+     * @return the client that makes the calls
+     */
+    public OnboardingClient getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Status connect() {
+        return delegate.connect();
+    }
+
+    @Override
+    public void disconnect() {
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public String getPeerName() {
+        return delegate.getPeerName();
+    }
+
+    @Override
+    public int getSessionId() {
+        return delegate.getSessionId();
+    }
+
+    @Override
+    public short getVersion() throws BusException {
+        return measure(Call.GET_VERSION, new Measured<Short>() {
+            @Override
+            Short call() throws BusException {
+                return delegate.getVersion();
+            }
+        });
+    }
+
+    @Override
+    public short getVersion(final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.GET_VERSION, new Measured<Short>() {
+            @Override
+            Short call() throws BusException {
+                return delegate.getVersion(deadline);
+            }
+        });
+    }
+
+    @Override
+    public short getState() throws BusException {
+        return measure(Call.GET_STATE, new Measured<Short>() {
+            @Override
+            Short call() throws BusException {
+                return delegate.getState();
+            }
+        });
+    }
+
+    @Override
+    public short getState(final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.GET_STATE, new Measured<Short>() {
+            @Override
+            Short call() throws BusException {
+                return delegate.getState(deadline);
+            }
+        });
+    }
+
+    @Override
+    public OBLastError GetLastError() throws BusException {
+        return measure(Call.GET_LAST_ERROR, new Measured<OBLastError>() {
+            @Override
+            OBLastError call() throws BusException {
+                return delegate.GetLastError();
+            }
+        });
+    }
+
+    @Override
+    public OBLastError GetLastError(final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.GET_LAST_ERROR, new Measured<OBLastError>() {
+            @Override
+            OBLastError call() throws BusException {
+                return delegate.GetLastError(deadline);
+            }
+        });
+    }
+
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot() throws BusException {
+        return measure(Call.GET_STATUS_SNAPSHOT, new Measured<OnboardingStatusSnapshot>() {
+            @Override
+            OnboardingStatusSnapshot call() throws BusException {
+                return delegate.getStatusSnapshot();
+            }
+        });
+    }
+
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot(final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.GET_STATUS_SNAPSHOT, new Measured<OnboardingStatusSnapshot>() {
+            @Override
+            OnboardingStatusSnapshot call() throws BusException {
+                return delegate.getStatusSnapshot(deadline);
+            }
+        });
+    }
+
+    @Override
+    public ConfigureWifiMode configureWiFi(final String ssid, final String passphrase, final AuthType authType) throws BusException {
+        return measure(Call.CONFIGURE_WIFI, new Measured<ConfigureWifiMode>() {
+            @Override
+            ConfigureWifiMode call() throws BusException {
+                return delegate.configureWiFi(ssid, passphrase, authType);
+            }
+        });
+    }
+
+    @Override
+    public ConfigureWifiMode configureWiFi(final String ssid, final String passphrase, final AuthType authType, final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.CONFIGURE_WIFI, new Measured<ConfigureWifiMode>() {
+            @Override
+            ConfigureWifiMode call() throws BusException {
+                return delegate.configureWiFi(ssid, passphrase, authType, deadline);
+            }
+        });
+    }
+
+    @Override
+    public void connectWiFi() throws BusException {
+        measure(Call.CONNECT, new Measured<Void>() {
+            @Override
+            Void call() throws BusException {
+                delegate.connectWiFi();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void connectWiFi(final OnboardingDeadline deadline) throws BusException {
+        measure(Call.CONNECT, new Measured<Void>() {
+            @Override
+            Void call() throws BusException {
+                delegate.connectWiFi(deadline);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void offboard() throws BusException {
+        measure(Call.OFFBOARD, new Measured<Void>() {
+            @Override
+            Void call() throws BusException {
+                delegate.offboard();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void offboard(final OnboardingDeadline deadline) throws BusException {
+        measure(Call.OFFBOARD, new Measured<Void>() {
+            @Override
+            Void call() throws BusException {
+                delegate.offboard(deadline);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ScanInfo getScanInfo() throws BusException {
+        return measure(Call.GET_SCAN_INFO, new Measured<ScanInfo>() {
+            @Override
+            ScanInfo call() throws BusException {
+                return delegate.getScanInfo();
+            }
+        });
+    }
+
+    @Override
+    public ScanInfo getScanInfo(final OnboardingDeadline deadline) throws BusException {
+        return measure(Call.GET_SCAN_INFO, new Measured<ScanInfo>() {
+            @Override
+            ScanInfo call() throws BusException {
+                return delegate.getScanInfo(deadline);
+            }
+        });
+    }
+
+    @Override
+    public ScanTable getScanTable() throws BusException {
+        return measure(Call.GET_SCAN_INFO, new Measured<ScanTable>() {
+            @Override
+            ScanTable call() throws BusException {
+                return delegate.getScanTable();
+            }
+        });
+    }
+
+    @Override
+    public void registerConnectionResultListener(ConnectionResultListener listener) throws BusException {
+        delegate.registerConnectionResultListener(listener);
+    }
+
+    @Override
+    public void registerConnectionResultListener(ConnectionResultListener listener, Executor executor) throws BusException {
+        delegate.registerConnectionResultListener(listener, executor);
+    }
+
+    @Override
+    public void unRegisterConnectionResultListener(ConnectionResultListener listener) {
+        delegate.unRegisterConnectionResultListener(listener);
+    }
+
+    /**
+     * A call of the delegate
+     *
+     * @param <T> the result of the call
+     */
+    private static abstract class Measured<T> {
+        abstract T call() throws BusException;
+    }
+
+    /**
+     * Make a call, reporting its start, latency and outcome to the sink
+     *
+     * @param call the org.alljoyn.Onboarding call
+     * @param measured makes the call
+     * @return the result of the call
+     * @throws BusException the failure of the call
+     */
+    private <T> T measure(Call call, Measured<T> measured) throws BusException {
+        sink.onCallStarted(call);
+        long start = System.nanoTime();
+        String outcome = OUTCOME_UNCHECKED;
+        try {
+            T result = measured.call();
+            outcome = OUTCOME_OK;
+            return result;
+        } catch (BusException e) {
+            outcome = getOutcome(e);
+            throw e;
+        } finally {
+            sink.onCallCompleted(call, System.nanoTime() - start, outcome);
+        }
+    }
+
+    /**
+     * @param e the failure of a call
+     * @return the AllJoyn error name of an error reply, or the name of the
+     *         AllJoyn status of the failure, or the simple class name of the
+     *         exception
+     */
+    static String getOutcome(BusException e) {
+        if (e instanceof ErrorReplyBusException) {
+            String errorName = ((ErrorReplyBusException) e).getErrorName();
+            if (errorName != null) {
+                return errorName;
+            }
+        }
+        Status status = OnboardingRetryPolicy.getStatus(e);
+        if (status != null) {
+            return status.name();
+        }
+        return e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,176 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free latency histogram in the spirit of HdrHistogram. Values are
+ * recorded in microseconds into log-linear buckets: every power of two is
+ * split into {@value #SUB_BUCKET_COUNT} linear sub buckets, so a reported
+ * percentile is within 1/{@value #SUB_BUCKET_COUNT} of the recorded value,
+ * whatever its magnitude. Values from 2^38 microseconds, about 76 hours,
+ * are recorded in the last bucket. Readings taken while values are
+ * recorded are approximate.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of linear sub buckets per power of two
+     */
+    public static final int SUB_BUCKET_COUNT = 16;
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * Highest power of two with its own buckets, 2^37 microseconds are about
+     * 38 hours
+     */
+    private static final int MAX_EXPONENT = 37;
+
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Record a latency
+     *
+     * @param latencyNanos the latency in nanoseconds
+     */
+    public void recordNanos(long latencyNanos) {
+        record(latencyNanos / 1000L);
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param latencyMicros the latency in microseconds, negative values are recorded as 0
+     */
+    public void record(long latencyMicros) {
+        long value = Math.max(latencyMicros, 0);
+        counts.incrementAndGet(getBucketIndex(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return the highest recorded value in microseconds, 0 if none
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * @return the mean of the recorded values in microseconds, 0 if none
+     */
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the value in microseconds that the given percentage of the
+     *         recorded values are lower than or equivalent to, 0 if none
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(getBucketUpperBound(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * Forget all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + " mean=" + (long) getMean() + "us p50=" + getValueAtPercentile(50) + "us p90=" + getValueAtPercentile(90) + "us p99="
+                + getValueAtPercentile(99) + "us max=" + getMax() + "us";
+    }
+
+    /**
+     * Values below 2 * {@value #SUB_BUCKET_COUNT} have a bucket each. Above,
+     * the bucket is given by the position of the highest bit and the
+     * {@value #SUB_BUCKET_BITS} bits below it.
+     *
+     * @param value a value in microseconds, not negative
+     * @return the index of the bucket of the value
+     */
+    private static int getBucketIndex(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @param index the index of a bucket
+     * @return the highest value of the bucket
+     */
+    private static long getBucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long top = SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,312 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alljoyn.bus.AuthListener;
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.Mutable;
+import org.alljoyn.bus.Status;
+
+/**
+ * An {@link AuthListener} for onboarders of @Secure onboardees, which keeps
+ * the onboardee passwords and lets AllJoyn reuse master secrets. A session
+ * with a peer whose master secret is still valid skips the key exchange, so
+ * that reconnecting to the same onboardee during retries and offboarding
+ * doesn't pay for the PIN/SRP handshake again.
+ * <p>
+ * Passwords are cached by peer GUID or by AppId, with an expiry, and a
+ * default password is used for unknown peers. Master secrets are stored in
+ * the BusAttachment key store, keyed by peer GUID, and expire after
+ * {@link #getMasterSecretExpiration()}. A failed authentication, or
+ * {@link #invalidate(String)}, drops both the password and the master secret
+ * of the peer. The number and duration of the key exchanges are recorded, to
+ * be compared with the duration of the method calls.
+ */
+public class OnboardingAuthListener implements AuthListener {
+
+    /**
+     * Default time a cached password is valid {@value #DEFAULT_CREDENTIAL_TTL} msec
+     */
+    public static final long DEFAULT_CREDENTIAL_TTL = 60 * 60 * 1000;
+
+    /**
+     * Default expiration of a master secret {@value #DEFAULT_MASTER_SECRET_EXPIRATION} sec
+     */
+    public static final int DEFAULT_MASTER_SECRET_EXPIRATION = 24 * 60 * 60;
+
+    private static final String PIN_KEYX = "ALLJOYN_PIN_KEYX";
+    private static final String SRP_KEYX = "ALLJOYN_SRP_KEYX";
+
+    private final BusAttachment bus;
+    private final char[] defaultPassword;
+    private final long credentialTtl;
+    private final int masterSecretExpiration;
+
+    /**
+     * The cached passwords by peer GUID or AppId
+     */
+    private final Map<String, Credential> credentials = new ConcurrentHashMap<String, Credential>();
+
+    /**
+     * The AppId of each peer bus name, as announced
+     */
+    private final Map<String, String> appIds = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Start time of the ongoing key exchange with each peer bus name, in {@link System#nanoTime()} units
+     */
+    private final Map<String, Long> keyExchangeStarts = new HashMap<String, Long>();
+
+    private final AtomicLong keyExchangeCount = new AtomicLong();
+    private final AtomicLong failedKeyExchangeCount = new AtomicLong();
+    private final AtomicLong totalKeyExchangeTime = new AtomicLong();
+    private final AtomicLong maxKeyExchangeTime = new AtomicLong();
+
+    /**
+     * A cached password and its expiry
+     */
+    private static class Credential {
+        private final char[] password;
+        private final long expiresAt;
+
+        private Credential(char[] password, long expiresAt) {
+            this.password = password;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Constructor with the default credential TTL and master secret expiration
+     *
+     * @param bus the BusAttachment the listener is registered with
+     * @param defaultPassword password of the peers that have no cached password, may be null
+     */
+    public OnboardingAuthListener(BusAttachment bus, char[] defaultPassword) {
+        this(bus, defaultPassword, DEFAULT_CREDENTIAL_TTL, DEFAULT_MASTER_SECRET_EXPIRATION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bus the BusAttachment the listener is registered with
+     * @param defaultPassword password of the peers that have no cached password, may be null
+     * @param credentialTtl time a cached password is valid in msec
+     * @param masterSecretExpiration expiration of a master secret in sec, 0 for the AllJoyn default
+     */
+    public OnboardingAuthListener(BusAttachment bus, char[] defaultPassword, long credentialTtl, int masterSecretExpiration) {
+        if (bus == null) {
+            throw new IllegalArgumentException("bus must not be null");
+        }
+        if (credentialTtl <= 0 || masterSecretExpiration < 0) {
+            throw new IllegalArgumentException("invalid credential TTL or master secret expiration");
+        }
+        this.bus = bus;
+        this.defaultPassword = defaultPassword == null ? null : defaultPassword.clone();
+        this.credentialTtl = credentialTtl;
+        this.masterSecretExpiration = masterSecretExpiration;
+    }
+
+    /**
+     * Cache the password of a peer
+     *
+     * @param key the peer GUID or the AppId of the peer
+     * @param password the password of the peer
+     */
+    public void setCredential(String key, char[] password) {
+        if (key == null || password == null) {
+            throw new IllegalArgumentException("key and password must not be null");
+        }
+        credentials.put(key, new Credential(password.clone(), System.currentTimeMillis() + credentialTtl));
+    }
+
+    /**
+     * Associate a peer bus name with its announced AppId, so that a password
+     * cached by AppId is found for the peer
+     *
+     * @param peerName the bus name of the peer
+     * @param appId the AppId of the peer
+     */
+    public void bindAppId(String peerName, String appId) {
+        if (peerName == null || appId == null) {
+            throw new IllegalArgumentException("peerName and appId must not be null");
+        }
+        appIds.put(peerName, appId);
+    }
+
+    /**
+     * Drop the cached password and the master secret of a peer. The next
+     * session with the peer runs a new key exchange.
+     *
+     * @param peerName the bus name of the peer
+     */
+    public void invalidate(String peerName) {
+        String guid = getPeerGuid(peerName);
+        if (guid != null) {
+            credentials.remove(guid);
+            bus.clearKeys(guid);
+        }
+        String appId = appIds.remove(peerName);
+        if (appId != null) {
+            credentials.remove(appId);
+        }
+    }
+
+    /**
+     * @return expiration of a master secret in sec, 0 for the AllJoyn default
+     */
+    public int getMasterSecretExpiration() {
+        return masterSecretExpiration;
+    }
+
+    /**
+     * @return number of completed key exchanges, successful or not. Sessions
+     *         that reused a master secret don't count.
+     */
+    public long getKeyExchangeCount() {
+        return keyExchangeCount.get();
+    }
+
+    /**
+     * @return number of key exchanges that failed to authenticate the peer
+     */
+    public long getFailedKeyExchangeCount() {
+        return failedKeyExchangeCount.get();
+    }
+
+    /**
+     * @return total duration of the key exchanges in msec
+     */
+    public long getTotalKeyExchangeTime() {
+        return totalKeyExchangeTime.get();
+    }
+
+    /**
+     * @return longest duration of a key exchange in msec
+     */
+    public long getMaxKeyExchangeTime() {
+        return maxKeyExchangeTime.get();
+    }
+
+    @Override
+    public boolean requested(String authMechanism, String peerName, int count, String userName, AuthRequest[] requests) {
+        if (!PIN_KEYX.equals(authMechanism) && !SRP_KEYX.equals(authMechanism)) {
+            return false;
+        }
+        if (count == 1) {
+            synchronized (keyExchangeStarts) {
+                keyExchangeStarts.put(peerName, System.nanoTime());
+            }
+        }
+
+        // a retry means the password that was given is wrong
+        char[] password = count == 1 ? getPassword(peerName) : null;
+        if (password == null) {
+            return false;
+        }
+        for (AuthRequest request : requests) {
+            if (request instanceof PasswordRequest) {
+                ((PasswordRequest) request).setPassword(password);
+            } else if (request instanceof ExpirationRequest) {
+                if (masterSecretExpiration > 0) {
+                    ((ExpirationRequest) request).setExpiration(masterSecretExpiration);
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void completed(String authMechanism, String peerName, boolean authenticated) {
+        Long start;
+        synchronized (keyExchangeStarts) {
+            start = keyExchangeStarts.remove(peerName);
+        }
+        if (start != null) {
+            long time = (System.nanoTime() - start) / 1000000L;
+            keyExchangeCount.incrementAndGet();
+            totalKeyExchangeTime.addAndGet(time);
+            long max = maxKeyExchangeTime.get();
+            while (time > max && !maxKeyExchangeTime.compareAndSet(max, time)) {
+                max = maxKeyExchangeTime.get();
+            }
+        }
+        if (!authenticated) {
+            failedKeyExchangeCount.incrementAndGet();
+            invalidate(peerName);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OnboardingAuthListener [keyExchangeCount=" + keyExchangeCount + ", failedKeyExchangeCount=" + failedKeyExchangeCount + ", totalKeyExchangeTime="
+                + totalKeyExchangeTime + ", maxKeyExchangeTime=" + maxKeyExchangeTime + "]";
+    }
+
+    /**
+     * @param peerName the bus name of the peer
+     * @return the cached password of the peer, by GUID then by AppId, or the default password
+     */
+    private char[] getPassword(String peerName) {
+        Credential credential = getValidCredential(getPeerGuid(peerName));
+        if (credential == null) {
+            credential = getValidCredential(appIds.get(peerName));
+        }
+        if (credential != null) {
+            return credential.password.clone();
+        }
+        return defaultPassword == null ? null : defaultPassword.clone();
+    }
+
+    /**
+     * @param key a peer GUID or AppId, may be null
+     * @return the cached credential of the key, or null if none or expired
+     */
+    private Credential getValidCredential(String key) {
+        if (key == null) {
+            return null;
+        }
+        Credential credential = credentials.get(key);
+        if (credential != null && credential.expiresAt <= System.currentTimeMillis()) {
+            credentials.remove(key);
+            return null;
+        }
+        return credential;
+    }
+
+    /**
+     * @param peerName the bus name of the peer
+     * @return the GUID of the peer, or null if unknown
+     */
+    private String getPeerGuid(String peerName) {
+        if (peerName == null) {
+            return null;
+        }
+        Mutable.StringValue guid = new Mutable.StringValue();
+        if (bus.getPeerGUID(peerName, guid) != Status.OK) {
+            return null;
+        }
+        return guid.value;
+    }
+}
@@ -0,0 +1,114 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alljoyn.onboarding.client.OnboardingCallTimeouts.Call;
+
+/**
+ * An {@link OnboardingMetricsSink} that aggregates the measurements in
+ * memory: a latency histogram, outcome counts and an in-flight gauge per
+ * org.alljoyn.Onboarding call. Safe to read from any thread, and may be
+ * shared by several {@link InstrumentedOnboardingClient}s.
+ */
+public class OnboardingCallMetrics implements OnboardingMetricsSink {
+
+    private final Map<Call, LatencyHistogram> latencies = new EnumMap<Call, LatencyHistogram>(Call.class);
+    private final Map<Call, ConcurrentHashMap<String, AtomicLong>> outcomes = new EnumMap<Call, ConcurrentHashMap<String, AtomicLong>>(Call.class);
+    private final Map<Call, AtomicInteger> inFlight = new EnumMap<Call, AtomicInteger>(Call.class);
+
+    /**
+     * Constructor
+     */
+    public OnboardingCallMetrics() {
+        // filled once, so that the maps are only read afterwards
+        for (Call call : Call.values()) {
+            latencies.put(call, new LatencyHistogram());
+            outcomes.put(call, new ConcurrentHashMap<String, AtomicLong>());
+            inFlight.put(call, new AtomicInteger());
+        }
+    }
+
+    @Override
+    public void onCallStarted(Call call) {
+        inFlight.get(call).incrementAndGet();
+    }
+
+    @Override
+    public void onCallCompleted(Call call, long latencyNanos, String outcome) {
+        inFlight.get(call).decrementAndGet();
+        latencies.get(call).recordNanos(latencyNanos);
+        ConcurrentHashMap<String, AtomicLong> counts = outcomes.get(call);
+        AtomicLong count = counts.get(outcome);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent(outcome, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @param call an org.alljoyn.Onboarding call
+     * @return the latency histogram of the call, successful or not
+     */
+    public LatencyHistogram getLatencyHistogram(Call call) {
+        return latencies.get(call);
+    }
+
+    /**
+     * @param call an org.alljoyn.Onboarding call
+     * @return a copy of the number of completions of the call by outcome
+     */
+    public Map<String, Long> getOutcomeCounts(Call call) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : outcomes.get(call).entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    /**
+     * @param call an org.alljoyn.Onboarding call
+     * @return number of ongoing calls of this kind
+     */
+    public int getInFlight(Call call) {
+        return inFlight.get(call).get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("OnboardingCallMetrics [");
+        for (Call call : Call.values()) {
+            LatencyHistogram histogram = latencies.get(call);
+            if (histogram.getCount() == 0 && getInFlight(call) == 0) {
+                continue;
+            }
+            sb.append("\n  ").append(call).append(": ").append(histogram).append(" outcomes=").append(getOutcomeCounts(call)).append(" inFlight=").append(getInFlight(call));
+        }
+        return sb.append("]").toString();
+    }
+}
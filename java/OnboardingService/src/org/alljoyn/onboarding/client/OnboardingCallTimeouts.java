@@ -0,0 +1,128 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Holder of the reply timeouts of the org.alljoyn.Onboarding calls made by
+ * {@link OnboardingClientImpl}. A timeout of 0 means the AllJoyn default reply
+ * timeout of {@value #ALLJOYN_DEFAULT_REPLY_TIMEOUT} msec.
+ */
+public class OnboardingCallTimeouts {
+
+    /**
+     * The AllJoyn default reply timeout in msec
+     */
+    public static final int ALLJOYN_DEFAULT_REPLY_TIMEOUT = 25000;
+
+    /**
+     * The org.alljoyn.Onboarding calls
+     */
+    public static enum Call {
+
+        /**
+         * Version property
+         */
+        GET_VERSION,
+
+        /**
+         * State property
+         */
+        GET_STATE,
+
+        /**
+         * LastError property
+         */
+        GET_LAST_ERROR,
+
+        /**
+         * Properties.GetAll of all the properties
+         */
+        GET_STATUS_SNAPSHOT,
+
+        /**
+         * ConfigureWiFi method
+         */
+        CONFIGURE_WIFI,
+
+        /**
+         * Connect method
+         */
+        CONNECT,
+
+        /**
+         * Offboard method
+         */
+        OFFBOARD,
+
+        /**
+         * GetScanInfo method
+         */
+        GET_SCAN_INFO
+    }
+
+    /**
+     * The reply timeout of each call in msec
+     */
+    private final Map<Call, Integer> timeouts = new EnumMap<Call, Integer>(Call.class);
+
+    /**
+     * Constructor. All the calls use the AllJoyn default reply timeout.
+     */
+    public OnboardingCallTimeouts() {
+    }
+
+    /**
+     * Constructor. All the calls use the given reply timeout.
+     *
+     * @param timeout reply timeout in msec, 0 for the AllJoyn default
+     */
+    public OnboardingCallTimeouts(int timeout) {
+        for (Call call : Call.values()) {
+            setTimeout(call, timeout);
+        }
+    }
+
+    /**
+     * Set the reply timeout of a call
+     *
+     * @param call the call
+     * @param timeout reply timeout in msec, 0 for the AllJoyn default
+     */
+    public synchronized void setTimeout(Call call, int timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        timeouts.put(call, timeout);
+    }
+
+    /**
+     * Get the reply timeout of a call
+     *
+     * @param call the call
+     * @return reply timeout in msec, never 0
+     */
+    public synchronized int getTimeout(Call call) {
+        Integer timeout = timeouts.get(call);
+        if (timeout == null || timeout == 0) {
+            return ALLJOYN_DEFAULT_REPLY_TIMEOUT;
+        }
+        return timeout;
+    }
+}
@@ -0,0 +1,282 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+
+/**
+ * An immutable record of what an onboardee is known to support, as learnt
+ * from its About announcements and from earlier sessions. Every field may be
+ * unknown. Updated copies are made by the {@code with} methods. The failures
+ * that lead to an unsupported feature are counted, so that a single lost
+ * answer doesn't mark the feature unsupported.
+ */
+public class OnboardingCapabilities {
+
+    /**
+     * Whether the onboardee supports a feature
+     */
+    public static enum Support {
+
+        /**
+         * Not learnt yet
+         */
+        UNKNOWN,
+
+        /**
+         * The onboardee supports the feature
+         */
+        SUPPORTED,
+
+        /**
+         * The onboardee doesn't support the feature
+         */
+        UNSUPPORTED
+    }
+
+    /**
+     * The interface version of an onboardee whose version is not known
+     */
+    public static final short UNKNOWN_VERSION = -1;
+
+    /**
+     * Nothing known
+     */
+    public static final OnboardingCapabilities UNKNOWN = new OnboardingCapabilities(UNKNOWN_VERSION, Support.UNKNOWN, Support.UNKNOWN, 0, null, Support.UNKNOWN, 0, 0);
+
+    /**
+     * Version of the encoding of {@link #encode()}
+     */
+    private static final String ENCODING_VERSION = "2";
+
+    private static final String SEPARATOR = ",";
+
+    private static final int ENCODED_FIELD_COUNT = 9;
+
+    /**
+     * The org.alljoyn.Onboarding interface version
+     */
+    private final short version;
+
+    /**
+     * Whether the onboardee announces the org.alljoyn.Onboarding interface
+     */
+    private final Support onboardingInterface;
+
+    /**
+     * Whether the onboardee answers GetScanInfo
+     */
+    private final Support scanInfo;
+
+    /**
+     * Number of GetScanInfo calls failed since the last successful one
+     */
+    private final int scanInfoFailures;
+
+    /**
+     * The mode the onboardee answered the last ConfigureWiFi call with
+     */
+    private final ConfigureWifiMode lastConfigureWifiMode;
+
+    /**
+     * Whether the onboardee, in fast channel mode, keeps the soft AP while
+     * validating the personal AP and sends the ConnectionResult signal
+     */
+    private final Support connectionResultSignal;
+
+    /**
+     * Number of ConnectionResult signals missed since the last received one
+     */
+    private final int connectionResultSignalFailures;
+
+    /**
+     * The time of the last update, in msec since the epoch
+     */
+    private final long updateTime;
+
+    /**
+     * Constructor
+     *
+     * @param version the interface version, {@link #UNKNOWN_VERSION} if not known
+     * @param onboardingInterface whether the onboardee announces the org.alljoyn.Onboarding interface
+     * @param scanInfo whether the onboardee answers GetScanInfo
+     * @param scanInfoFailures number of GetScanInfo calls failed since the last successful one
+     * @param lastConfigureWifiMode the last ConfigureWiFi answer, null if not known
+     * @param connectionResultSignal whether the onboardee sends the ConnectionResult signal in fast channel mode
+     * @param connectionResultSignalFailures number of ConnectionResult signals missed since the last received one
+     * @param updateTime the time of the last update, in msec since the epoch
+     */
+    public OnboardingCapabilities(short version, Support onboardingInterface, Support scanInfo, int scanInfoFailures, ConfigureWifiMode lastConfigureWifiMode,
+            Support connectionResultSignal, int connectionResultSignalFailures, long updateTime) {
+        if (onboardingInterface == null || scanInfo == null || connectionResultSignal == null) {
+            throw new IllegalArgumentException("support values must not be null");
+        }
+        if (scanInfoFailures < 0 || connectionResultSignalFailures < 0) {
+            throw new IllegalArgumentException("failure counts must not be negative");
+        }
+        this.version = version;
+        this.onboardingInterface = onboardingInterface;
+        this.scanInfo = scanInfo;
+        this.scanInfoFailures = scanInfoFailures;
+        this.lastConfigureWifiMode = lastConfigureWifiMode;
+        this.connectionResultSignal = connectionResultSignal;
+        this.connectionResultSignalFailures = connectionResultSignalFailures;
+        this.updateTime = updateTime;
+    }
+
+    /**
+     * @return the interface version, {@link #UNKNOWN_VERSION} if not known
+     */
+    public short getVersion() {
+        return version;
+    }
+
+    /**
+     * @return whether the onboardee announces the org.alljoyn.Onboarding interface
+     */
+    public Support getOnboardingInterface() {
+        return onboardingInterface;
+    }
+
+    /**
+     * @return whether the onboardee answers GetScanInfo
+     */
+    public Support getScanInfo() {
+        return scanInfo;
+    }
+
+    /**
+     * @return number of GetScanInfo calls failed since the last successful one
+     */
+    public int getScanInfoFailures() {
+        return scanInfoFailures;
+    }
+
+    /**
+     * @return the mode the onboardee answered the last ConfigureWiFi call with, null if not known
+     */
+    public ConfigureWifiMode getLastConfigureWifiMode() {
+        return lastConfigureWifiMode;
+    }
+
+    /**
+     * @return whether the onboardee sends the ConnectionResult signal in fast channel mode
+     */
+    public Support getConnectionResultSignal() {
+        return connectionResultSignal;
+    }
+
+    /**
+     * @return number of ConnectionResult signals missed since the last received one
+     */
+    public int getConnectionResultSignalFailures() {
+        return connectionResultSignalFailures;
+    }
+
+    /**
+     * @return the time of the last update, in msec since the epoch
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * @param version the interface version
+     * @return a copy with the given interface version
+     */
+    public OnboardingCapabilities withVersion(short version) {
+        return new OnboardingCapabilities(version, onboardingInterface, scanInfo, scanInfoFailures, lastConfigureWifiMode, connectionResultSignal,
+                connectionResultSignalFailures, System.currentTimeMillis());
+    }
+
+    /**
+     * @param onboardingInterface whether the onboardee announces the org.alljoyn.Onboarding interface
+     * @return a copy with the given onboarding interface support
+     */
+    public OnboardingCapabilities withOnboardingInterface(Support onboardingInterface) {
+        return new OnboardingCapabilities(version, onboardingInterface, scanInfo, scanInfoFailures, lastConfigureWifiMode, connectionResultSignal,
+                connectionResultSignalFailures, System.currentTimeMillis());
+    }
+
+    /**
+     * @param scanInfo whether the onboardee answers GetScanInfo
+     * @param scanInfoFailures number of GetScanInfo calls failed since the last successful one
+     * @return a copy with the given GetScanInfo support
+     */
+    public OnboardingCapabilities withScanInfo(Support scanInfo, int scanInfoFailures) {
+        return new OnboardingCapabilities(version, onboardingInterface, scanInfo, scanInfoFailures, lastConfigureWifiMode, connectionResultSignal,
+                connectionResultSignalFailures, System.currentTimeMillis());
+    }
+
+    /**
+     * @param lastConfigureWifiMode the mode the onboardee answered ConfigureWiFi with
+     * @return a copy with the given ConfigureWiFi answer
+     */
+    public OnboardingCapabilities withLastConfigureWifiMode(ConfigureWifiMode lastConfigureWifiMode) {
+        return new OnboardingCapabilities(version, onboardingInterface, scanInfo, scanInfoFailures, lastConfigureWifiMode, connectionResultSignal,
+                connectionResultSignalFailures, System.currentTimeMillis());
+    }
+
+    /**
+     * @param connectionResultSignal whether the onboardee sends the ConnectionResult signal in fast channel mode
+     * @param connectionResultSignalFailures number of ConnectionResult signals missed since the last received one
+     * @return a copy with the given ConnectionResult signal support
+     */
+    public OnboardingCapabilities withConnectionResultSignal(Support connectionResultSignal, int connectionResultSignalFailures) {
+        return new OnboardingCapabilities(version, onboardingInterface, scanInfo, scanInfoFailures, lastConfigureWifiMode, connectionResultSignal,
+                connectionResultSignalFailures, System.currentTimeMillis());
+    }
+
+    /**
+     * @return a compact text form of the capabilities, read by {@link #decode(String)}
+     */
+    public String encode() {
+        return ENCODING_VERSION + SEPARATOR + version + SEPARATOR + onboardingInterface.name() + SEPARATOR + scanInfo.name() + SEPARATOR + scanInfoFailures + SEPARATOR
+                + (lastConfigureWifiMode == null ? "" : lastConfigureWifiMode.name()) + SEPARATOR + connectionResultSignal.name() + SEPARATOR
+                + connectionResultSignalFailures + SEPARATOR + updateTime;
+    }
+
+    /**
+     * @param encoded the text form made by {@link #encode()}
+     * @return the capabilities, or null if the text is not a valid encoding
+     *         of the current version
+     */
+    public static OnboardingCapabilities decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] fields = encoded.split(SEPARATOR, -1);
+        if (fields.length != ENCODED_FIELD_COUNT || !ENCODING_VERSION.equals(fields[0])) {
+            return null;
+        }
+        try {
+            ConfigureWifiMode lastConfigureWifiMode = fields[5].length() == 0 ? null : ConfigureWifiMode.valueOf(fields[5]);
+            return new OnboardingCapabilities(Short.parseShort(fields[1]), Support.valueOf(fields[2]), Support.valueOf(fields[3]), Integer.parseInt(fields[4]),
+                    lastConfigureWifiMode, Support.valueOf(fields[6]), Integer.parseInt(fields[7]), Long.parseLong(fields[8]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "OnboardingCapabilities [version=" + version + ", onboardingInterface=" + onboardingInterface + ", scanInfo=" + scanInfo + ", scanInfoFailures=" + scanInfoFailures
+                + ", lastConfigureWifiMode=" + lastConfigureWifiMode + ", connectionResultSignal=" + connectionResultSignal + ", connectionResultSignalFailures="
+                + connectionResultSignalFailures + ", updateTime=" + updateTime + "]";
+    }
+}
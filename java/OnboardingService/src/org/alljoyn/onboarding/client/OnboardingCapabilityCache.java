@@ -0,0 +1,447 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alljoyn.onboarding.client.OnboardingCapabilities.Support;
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+
+/**
+ * Remembers the {@link OnboardingCapabilities} of the onboardees by AppId and
+ * DeviceId, so that what a device supports is not rediscovered every session.
+ * The capabilities are learnt from the About announcements and from the
+ * calls of earlier sessions, see {@link CapabilityAwareOnboardingClient}, and
+ * are written through to a {@link Store} so that they survive restarts. Only
+ * the devices that announce the org.alljoyn.Onboarding interface are
+ * recorded. A feature is taken as unsupported only after
+ * {@value #FAILURES_TO_UNSUPPORTED} failures in a row, and the capabilities
+ * of a device that were not updated for the maximal age are forgotten, so
+ * that they are learnt again after a firmware update. When more than the
+ * maximal number of devices are known, the least recently updated one is
+ * forgotten.
+ */
+public class OnboardingCapabilityCache {
+
+    /**
+     * Default maximal number of devices {@value #DEFAULT_MAX_ENTRIES}
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /**
+     * Default maximal age of the capabilities of a device {@value #DEFAULT_MAX_AGE} msec
+     */
+    public static final long DEFAULT_MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /**
+     * Number of failures in a row after which a feature is taken as unsupported
+     */
+    public static final int FAILURES_TO_UNSUPPORTED = 2;
+
+    /**
+     * Persists the capabilities. Called on the threads that update the cache.
+     */
+    public static interface Store {
+
+        /**
+         * @return the stored capabilities in their encoded form by key
+         */
+        public Map<String, String> load();
+
+        /**
+         * Store the capabilities of a device, replacing the previous ones
+         *
+         * @param key the key of the device
+         * @param encoded the capabilities, encoded by {@link OnboardingCapabilities#encode()}
+         */
+        public void save(String key, String encoded);
+
+        /**
+         * Forget the capabilities of a device
+         *
+         * @param key the key of the device
+         */
+        public void remove(String key);
+    }
+
+    /**
+     * A {@link Store} that keeps the capabilities in a properties file. The
+     * whole file is rewritten on every update, through a temporary file that
+     * replaces it.
+     */
+    public static class FileStore implements Store {
+
+        private final File file;
+        private final Properties properties = new Properties();
+
+        /**
+         * Constructor
+         *
+         * @param file the properties file, created on the first update
+         */
+        public FileStore(File file) {
+            if (file == null) {
+                throw new IllegalArgumentException("file must not be null");
+            }
+            this.file = file;
+        }
+
+        @Override
+        public synchronized Map<String, String> load() {
+            properties.clear();
+            if (file.exists()) {
+                InputStream in = null;
+                try {
+                    in = new FileInputStream(file);
+                    properties.load(in);
+                } catch (IOException e) {
+                    // start afresh, the capabilities will be learnt again
+                    properties.clear();
+                } finally {
+                    close(in);
+                }
+            }
+            Map<String, String> entries = new HashMap<String, String>();
+            for (String key : properties.stringPropertyNames()) {
+                entries.put(key, properties.getProperty(key));
+            }
+            return entries;
+        }
+
+        @Override
+        public synchronized void save(String key, String encoded) {
+            properties.setProperty(key, encoded);
+            write();
+        }
+
+        @Override
+        public synchronized void remove(String key) {
+            if (properties.remove(key) != null) {
+                write();
+            }
+        }
+
+        /**
+         * Write the properties to a temporary file that replaces the file.
+         * The capabilities are only an optimization, so a failure is ignored.
+         */
+        private void write() {
+            File tmp = new File(file.getPath() + ".tmp");
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(tmp);
+                properties.store(out, "org.alljoyn.Onboarding capabilities");
+                out.close();
+                out = null;
+                if (!tmp.renameTo(file)) {
+                    file.delete();
+                    tmp.renameTo(file);
+                }
+            } catch (IOException e) {
+                tmp.delete();
+            } finally {
+                close(out);
+            }
+        }
+
+        private static void close(java.io.Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    private final Store store;
+    private final int maxEntries;
+    private final long maxAge;
+    private final ConcurrentHashMap<String, OnboardingCapabilities> entries = new ConcurrentHashMap<String, OnboardingCapabilities>();
+
+    /**
+     * Constructor. The capabilities are not persisted.
+     */
+    public OnboardingCapabilityCache() {
+        this(null, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor. Loads the stored capabilities, which are kept for
+     * {@link #DEFAULT_MAX_AGE}.
+     *
+     * @param store persists the capabilities, or null for none
+     * @param maxEntries maximal number of devices
+     */
+    public OnboardingCapabilityCache(Store store, int maxEntries) {
+        this(store, maxEntries, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Constructor. Loads the stored capabilities.
+     *
+     * @param store persists the capabilities, or null for none
+     * @param maxEntries maximal number of devices
+     * @param maxAge maximal age, in msec, of the capabilities of a device
+     */
+    public OnboardingCapabilityCache(Store store, int maxEntries, long maxAge) {
+        if (maxEntries <= 0 || maxAge <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxAge must be positive");
+        }
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+        if (store != null) {
+            for (Map.Entry<String, String> entry : store.load().entrySet()) {
+                OnboardingCapabilities capabilities = OnboardingCapabilities.decode(entry.getValue());
+                if (capabilities != null && !isExpired(capabilities)) {
+                    entries.put(entry.getKey(), capabilities);
+                } else {
+                    store.remove(entry.getKey());
+                }
+            }
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @return the capabilities of the device, {@link OnboardingCapabilities#UNKNOWN} if none are known
+     */
+    public OnboardingCapabilities get(String appId, String deviceId) {
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities capabilities = entries.get(key);
+        if (capabilities == null) {
+            return OnboardingCapabilities.UNKNOWN;
+        }
+        if (isExpired(capabilities)) {
+            if (entries.remove(key, capabilities) && store != null) {
+                store.remove(key);
+            }
+            return OnboardingCapabilities.UNKNOWN;
+        }
+        return capabilities;
+    }
+
+    /**
+     * Record an About announcement of the device. A device that doesn't
+     * announce the org.alljoyn.Onboarding interface is only recorded if its
+     * capabilities are already known.
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @param isOnboardingAnnounced whether the announcement lists the org.alljoyn.Onboarding interface
+     */
+    public void onAnnouncement(String appId, String deviceId, boolean isOnboardingAnnounced) {
+        Support support = isOnboardingAnnounced ? Support.SUPPORTED : Support.UNSUPPORTED;
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities current;
+        do {
+            current = get(appId, deviceId);
+            if (current.getOnboardingInterface() == support || (!isOnboardingAnnounced && current == OnboardingCapabilities.UNKNOWN)) {
+                return;
+            }
+        } while (!replace(key, current, current.withOnboardingInterface(support)));
+    }
+
+    /**
+     * Record the interface version of the device
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @param version the interface version
+     */
+    public void setVersion(String appId, String deviceId, short version) {
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities current;
+        do {
+            current = get(appId, deviceId);
+            if (current.getVersion() == version) {
+                return;
+            }
+        } while (!replace(key, current, current.withVersion(version)));
+    }
+
+    /**
+     * Record whether the device answered GetScanInfo. GetScanInfo is taken as
+     * unsupported after {@value #FAILURES_TO_UNSUPPORTED} unsupported answers
+     * in a row.
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @param support whether the device answered GetScanInfo
+     */
+    public void setScanInfo(String appId, String deviceId, Support support) {
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities current;
+        OnboardingCapabilities updated;
+        do {
+            current = get(appId, deviceId);
+            if (support == Support.UNSUPPORTED) {
+                int failures = current.getScanInfoFailures() + 1;
+                updated = current.withScanInfo(failures >= FAILURES_TO_UNSUPPORTED ? Support.UNSUPPORTED : current.getScanInfo(), failures);
+            } else if (current.getScanInfo() != support || current.getScanInfoFailures() != 0) {
+                updated = current.withScanInfo(support, 0);
+            } else {
+                return;
+            }
+        } while (!replace(key, current, updated));
+    }
+
+    /**
+     * Record the mode the device answered ConfigureWiFi with
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @param mode the ConfigureWiFi answer
+     */
+    public void setLastConfigureWifiMode(String appId, String deviceId, ConfigureWifiMode mode) {
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities current;
+        do {
+            current = get(appId, deviceId);
+            if (current.getLastConfigureWifiMode() == mode) {
+                return;
+            }
+        } while (!replace(key, current, current.withLastConfigureWifiMode(mode)));
+    }
+
+    /**
+     * Record whether the device sent the ConnectionResult signal in fast
+     * channel mode. The signal is taken as unsupported after
+     * {@value #FAILURES_TO_UNSUPPORTED} missed signals in a row.
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @param support whether the signal arrived in time
+     */
+    public void setConnectionResultSignal(String appId, String deviceId, Support support) {
+        String key = getKey(appId, deviceId);
+        OnboardingCapabilities current;
+        OnboardingCapabilities updated;
+        do {
+            current = get(appId, deviceId);
+            if (support == Support.UNSUPPORTED) {
+                int failures = current.getConnectionResultSignalFailures() + 1;
+                updated = current.withConnectionResultSignal(failures >= FAILURES_TO_UNSUPPORTED ? Support.UNSUPPORTED : current.getConnectionResultSignal(), failures);
+            } else if (current.getConnectionResultSignal() != support || current.getConnectionResultSignalFailures() != 0) {
+                updated = current.withConnectionResultSignal(support, 0);
+            } else {
+                return;
+            }
+        } while (!replace(key, current, updated));
+    }
+
+    /**
+     * Forget the capabilities of a device, for example after a firmware update
+     *
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     */
+    public void invalidate(String appId, String deviceId) {
+        String key = getKey(appId, deviceId);
+        if (entries.remove(key) != null && store != null) {
+            store.remove(key);
+        }
+    }
+
+    /**
+     * @return number of known devices
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Replace the capabilities of a device if they are still the expected ones
+     *
+     * @param key the key of the device
+     * @param expected the capabilities read, {@link OnboardingCapabilities#UNKNOWN} if none
+     * @param updated the new capabilities
+     * @return false if the capabilities were changed concurrently
+     */
+    private boolean replace(String key, OnboardingCapabilities expected, OnboardingCapabilities updated) {
+        boolean isReplaced;
+        if (expected == OnboardingCapabilities.UNKNOWN) {
+            isReplaced = entries.putIfAbsent(key, updated) == null;
+        } else {
+            isReplaced = entries.replace(key, expected, updated);
+        }
+        if (!isReplaced) {
+            return false;
+        }
+        if (store != null) {
+            store.save(key, updated.encode());
+        }
+        evictIfNeeded();
+        return true;
+    }
+
+    /**
+     * @param capabilities the capabilities of a device
+     * @return true if the capabilities were not updated for the maximal age
+     */
+    private boolean isExpired(OnboardingCapabilities capabilities) {
+        return System.currentTimeMillis() - capabilities.getUpdateTime() > maxAge;
+    }
+
+    /**
+     * Forget the least recently updated devices beyond the maximal number
+     */
+    private void evictIfNeeded() {
+        while (entries.size() > maxEntries) {
+            String oldestKey = null;
+            long oldestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, OnboardingCapabilities> entry : entries.entrySet()) {
+                if (entry.getValue().getUpdateTime() < oldestTime) {
+                    oldestTime = entry.getValue().getUpdateTime();
+                    oldestKey = entry.getKey();
+                }
+            }
+            if (oldestKey == null) {
+                return;
+            }
+            if (entries.remove(oldestKey) != null && store != null) {
+                store.remove(oldestKey);
+            }
+        }
+    }
+
+    /**
+     * @param appId the AppId of the device
+     * @param deviceId the DeviceId of the device
+     * @return the key of the device
+     */
+    private static String getKey(String appId, String deviceId) {
+        if (appId == null) {
+            throw new IllegalArgumentException("appId must not be null");
+        }
+        return deviceId == null ? appId : appId + "/" + deviceId;
+    }
+}
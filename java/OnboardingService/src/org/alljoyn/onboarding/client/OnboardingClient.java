@@ -16,12 +16,15 @@
 
 package org.alljoyn.onboarding.client;
 
+import java.util.concurrent.Executor;
+
 import org.alljoyn.bus.BusException;
 import org.alljoyn.onboarding.OnboardingService.AuthType;
 import org.alljoyn.onboarding.transport.ConnectionResultListener;
 import org.alljoyn.onboarding.transport.OBLastError;
 import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
 import org.alljoyn.onboarding.transport.ScanInfo;
+import org.alljoyn.onboarding.transport.ScanTable;
 import org.alljoyn.services.common.ClientBase;
 /**
  * An interface for onboarding a remote IoE device (onboardee). Encapsulates the
@@ -52,6 +55,15 @@ public interface OnboardingClient extends ClientBase {
      */
     public OBLastError GetLastError() throws BusException;
 
+    /**
+     * Read the Version, State and LastError properties of the onboardee in a
+     * single round trip, using org.freedesktop.DBus.Properties.GetAll
+     *
+     * @return an immutable snapshot of the onboardee properties
+     * @throws BusException
+     *             if the call fails or the reply misses one of the properties
+     */
+    public OnboardingStatusSnapshot getStatusSnapshot() throws BusException;
 
 
     /**
@@ -104,19 +116,130 @@ public interface OnboardingClient extends ClientBase {
      */
     public ScanInfo getScanInfo() throws BusException;
 
+    /**
+     * Same as {@link #getScanInfo()}, decoded into a compact table with
+     * interned SSIDs. Preferable when the onboardee is scanned repeatedly or
+     * reports many access points.
+     *
+     * @return the scan results
+     * @throws BusException
+     *             If device doesn't support the feature, the AllJoyn error code
+     *             org.alljoyn.Error.FeatureNotAvailable will be returned in the
+     *             AllJoyn response.
+     */
+    public ScanTable getScanTable() throws BusException;
+
     /***
      * Register to receive ConnectionResult signal data.
      * This is relevant in fast channel switching mode.
+     * Several listeners may be registered. The listener isn't called on the
+     * AllJoyn signal dispatch thread, but on a shared dispatcher thread.
      *
      * @param listener callback class to receive data.
      * @throws BusException if registration fails
      */
     public void registerConnectionResultListener(ConnectionResultListener listener) throws BusException;
 
+    /***
+     * Register to receive ConnectionResult signal data on the given executor.
+     * This is relevant in fast channel switching mode.
+     *
+     * @param listener callback class to receive data.
+     * @param executor calls the listener. If null the shared dispatcher thread is used.
+     * @throws BusException if registration fails
+     */
+    public void registerConnectionResultListener(ConnectionResultListener listener, Executor executor) throws BusException;
+
     /**
      * Unregister from receiving ConnectionResult signal data.
+     * Other registered listeners keep receiving it.
      * @param listener
      */
     public void unRegisterConnectionResultListener(ConnectionResultListener listener);
 
+    /**
+     * Same as {@link #getVersion()}, within the remaining budget of the deadline.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @return the interface version
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public short getVersion(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #getState()}, within the remaining budget of the deadline.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @return the onboarding state
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public short getState(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #GetLastError()}, within the remaining budget of the deadline.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @return last error
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public OBLastError GetLastError(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #getStatusSnapshot()}, within the remaining budget of the deadline.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @return an immutable snapshot of the onboardee properties
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public OnboardingStatusSnapshot getStatusSnapshot(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #configureWiFi(String, String, AuthType)}, within the
+     * remaining budget of the deadline.
+     *
+     * @param ssid
+     *            the personal AP SSID
+     * @param passphrase
+     *            the personal AP passphrase
+     * @param authType
+     *            the authentication type of the AP
+     * @param deadline the overall budget of the flow, or null for none
+     * @return Wifi mode regular or fast channel
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public ConfigureWifiMode configureWiFi(String ssid, String passphrase, AuthType authType, OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #connectWiFi()}, if the deadline hasn't expired.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public void connectWiFi(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #offboard()}, if the deadline hasn't expired.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public void offboard(OnboardingDeadline deadline) throws BusException;
+
+    /**
+     * Same as {@link #getScanInfo()}, within the remaining budget of the deadline.
+     *
+     * @param deadline the overall budget of the flow, or null for none
+     * @return ScanInfo an array of scan results.
+     * @throws BusException
+     *             {@link OnboardingDeadlineExceededException} if the deadline has expired
+     */
+    public ScanInfo getScanInfo(OnboardingDeadline deadline) throws BusException;
+
 }
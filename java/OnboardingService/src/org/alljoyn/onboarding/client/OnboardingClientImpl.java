@@ -16,21 +16,23 @@
 
 package org.alljoyn.onboarding.client;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
 import org.alljoyn.bus.BusAttachment;
 import org.alljoyn.bus.BusException;
-import org.alljoyn.bus.BusObject;
 import org.alljoyn.bus.ProxyBusObject;
 import org.alljoyn.bus.Status;
-import org.alljoyn.bus.annotation.BusSignalHandler;
+import org.alljoyn.bus.Variant;
+import org.alljoyn.bus.ifaces.Properties;
 import org.alljoyn.onboarding.OnboardingService.AuthType;
-import org.alljoyn.onboarding.transport.ConnectionResult;
-import org.alljoyn.onboarding.transport.ConnectionResult.ConnectionResponseType;
-import org.alljoyn.onboarding.transport.ConnectionResultAJ;
 import org.alljoyn.onboarding.transport.ConnectionResultListener;
 import org.alljoyn.onboarding.transport.OBLastError;
 import org.alljoyn.onboarding.transport.OnboardingTransport;
 import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
 import org.alljoyn.onboarding.transport.ScanInfo;
+import org.alljoyn.onboarding.transport.ScanTable;
 import org.alljoyn.services.common.ClientBaseImpl;
 import org.alljoyn.services.common.ServiceAvailabilityListener;
 
@@ -40,68 +42,292 @@ import org.alljoyn.services.common.ServiceAvailabilityListener;
 public class OnboardingClientImpl extends ClientBaseImpl implements OnboardingClient {
 
     /**
-     * Used to register the bus object upon the bus attachment
+     * Names of the org.alljoyn.Onboarding properties as returned by Properties.GetAll
+     */
+    private final static String VERSION_PROPERTY = "Version";
+    private final static String STATE_PROPERTY = "State";
+    private final static String LAST_ERROR_PROPERTY = "LastError";
+
+    /**
+     * Fans out the ConnectionResult signal data to the registered listeners
+     */
+    private final ConnectionResultListenerRegistry connectionResultListeners = new ConnectionResultListenerRegistry();
+
+    /**
+     * The sender bus name and session id the ConnectionResult listeners were registered for.
+     * Stored so that unregistering works even after the session has changed.
+     */
+    private String routedSender = null;
+    private int routedSessionId = 0;
+
+    /**
+     * Step in msec the reply timeout bound by a deadline is rounded down to,
+     * so that the proxy objects of such timeouts can be cached
+     */
+    private final static int DEADLINE_TIMEOUT_STEP = 1000;
+
+    /**
+     * Step in msec the reply timeout bound by a deadline is rounded down to
+     * when less than {@link #DEADLINE_TIMEOUT_STEP} remains. Also the
+     * shortest reply timeout.
+     */
+    private final static int DEADLINE_TIMEOUT_FINE_STEP = 100;
+
+    /**
+     * The reply timeouts of the calls
+     */
+    private volatile OnboardingCallTimeouts callTimeouts = new OnboardingCallTimeouts();
+
+    /**
+     * The interface handles of the current session.
+     * Building them creates a new reflective proxy, so they are reused by all
+     * the calls of the same session.
      */
-    private final static String CONNECTION_RESULT_PATH = "/OnboardingTranport/ConnectionResult";
+    private volatile TransportHandle transportHandle = null;
 
     /**
-     * Stores instance  of ConnectionResultReceiver
+     * Guards the replacement of {@link #transportHandle}
      */
-    private ConnectionResultReceiver receiver = null;
+    private final Object handleLock = new Object();
 
     /**
-     * Stores instance of ConnectionResultListener {@link ConnectionResultListener}
+     * Pairs the cached interface handles of the remote object with the session
+     * they were created for. A proxy object is kept per reply timeout value,
+     * the timeouts bound by a deadline included once rounded.
      */
-    private ConnectionResultListener connectionResultListener = null;
+    private static class TransportHandle {
+        private final int sessionId;
+        private final ConcurrentHashMap<Integer, ProxyInterfaces> proxies = new ConcurrentHashMap<Integer, ProxyInterfaces>();
+
+        private TransportHandle(int sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    /**
+     * The interface handles of a single proxy object
+     */
+    private static class ProxyInterfaces {
+        private final ProxyBusObject proxyObj;
+        private final OnboardingTransport transport;
+        private final Properties properties;
+
+        private ProxyInterfaces(ProxyBusObject proxyObj, OnboardingTransport transport, Properties properties) {
+            this.proxyObj = proxyObj;
+            this.transport = transport;
+            this.properties = properties;
+        }
+    }
 
     /**
-     * Internal class  used for receiving ConnectionResult signal .
-     * Calls onConnectionResult to the CallBack  ConnectionResultListener to deliver the signal data.
+     * Drops the cached interface handle when the session is lost, then
+     * notifies the application's ServiceAvailabilityListener.
      */
-    private class ConnectionResultReceiver implements BusObject {
-        @BusSignalHandler(iface = OnboardingTransport.INTERFACE_NAME, signal = "ConnectionResult")
-        public void ConnectionResult(ConnectionResultAJ connectionResultAJ) {
-            ConnectionResult.ConnectionResponseType  connectionResponseType =ConnectionResult.ConnectionResponseType.getConnectionResponseTypeByValue(connectionResultAJ.code);
-            if (connectionResponseType==null){
-                connectionResponseType=ConnectionResponseType.ERROR_MESSAGE;
+    private static class SessionLostListener implements ServiceAvailabilityListener {
+        private final ServiceAvailabilityListener serviceAvailabilityListener;
+        private volatile OnboardingClientImpl client = null;
+
+        private SessionLostListener(ServiceAvailabilityListener serviceAvailabilityListener) {
+            this.serviceAvailabilityListener = serviceAvailabilityListener;
+        }
+
+        @Override
+        public void connectionLost() {
+            OnboardingClientImpl lostClient = client;
+            if (lostClient != null) {
+                lostClient.invalidateTransportHandle();
             }
-            if (connectionResultListener!=null){
-                connectionResultListener.onConnectionResult(new ConnectionResult(connectionResponseType, connectionResultAJ.message));
+            if (serviceAvailabilityListener != null) {
+                serviceAvailabilityListener.connectionLost();
             }
         }
     }
 
-    @SuppressWarnings("deprecation")
     public OnboardingClientImpl(String m_deviceName, BusAttachment bus, ServiceAvailabilityListener serviceAvailabilityListener, short port) {
-        super(m_deviceName, bus, serviceAvailabilityListener, OnboardingTransport.OBJ_PATH, OnboardingTransport.class, port);
+        this(m_deviceName, bus, new SessionLostListener(serviceAvailabilityListener), port);
+    }
+
+    @SuppressWarnings("deprecation")
+    private OnboardingClientImpl(String m_deviceName, BusAttachment bus, SessionLostListener sessionLostListener, short port) {
+        super(m_deviceName, bus, sessionLostListener, OnboardingTransport.OBJ_PATH, OnboardingTransport.class, port);
+        sessionLostListener.client = this;
+    }
+
+    /**
+     * Join a session with the onboardee. ConnectionResult listeners that
+     * are still registered from a previous session are routed to the new one.
+     */
+    @Override
+    public Status connect() {
+        Status status = super.connect();
+        if (status != Status.OK) {
+            return status;
+        }
+        synchronized (this) {
+            if (connectionResultListeners.isEmpty()) {
+                return status;
+            }
+            try {
+                routeConnectionResultSignals();
+            } catch (BusException e) {
+                super.disconnect();
+                return Status.FAIL;
+            }
+        }
+        return status;
+    }
+
+    /**
+     * Leave the session. The registered ConnectionResult listeners are kept
+     * and will receive the signals of the next session.
+     */
+    @Override
+    public void disconnect() {
+        invalidateTransportHandle();
+        synchronized (this) {
+            unrouteConnectionResultSignals();
+        }
+        super.disconnect();
+    }
+
+    /**
+     * Set the reply timeouts of the calls. Applies to the next calls.
+     *
+     * @param callTimeouts the reply timeouts
+     */
+    public void setCallTimeouts(OnboardingCallTimeouts callTimeouts) {
+        if (callTimeouts == null) {
+            throw new IllegalArgumentException("callTimeouts must not be null");
+        }
+        this.callTimeouts = callTimeouts;
+    }
+
+    /**
+     * @return the reply timeouts of the calls
+     */
+    public OnboardingCallTimeouts getCallTimeouts() {
+        return callTimeouts;
+    }
+
+    /**
+     * Returns the interface handles to be used for the given call. The reply
+     * timeout is the one configured for the call, shortened to the remaining
+     * budget of the deadline if needed. A shortened timeout is rounded down
+     * to whole seconds, or to tenths of a second in the last second, so that
+     * its proxy object is cached as well.
+     *
+     * @param call the call about to be made
+     * @param deadline the overall budget of the flow, or null for none
+     * @return the interface handles of the remote object
+     * @throws OnboardingDeadlineExceededException if the deadline has expired
+     */
+    private ProxyInterfaces getProxyInterfaces(OnboardingCallTimeouts.Call call, OnboardingDeadline deadline) throws OnboardingDeadlineExceededException {
+        int timeout = callTimeouts.getTimeout(call);
+        int sessionId = getSessionId();
+        if (deadline != null) {
+            long remaining = deadline.getRemainingTime();
+            if (remaining <= 0) {
+                throw new OnboardingDeadlineExceededException("Deadline expired before " + call);
+            }
+            if (remaining < timeout) {
+                int step = remaining < DEADLINE_TIMEOUT_STEP ? DEADLINE_TIMEOUT_FINE_STEP : DEADLINE_TIMEOUT_STEP;
+                timeout = (int) Math.max(remaining / step * step, DEADLINE_TIMEOUT_FINE_STEP);
+            }
+        }
+
+        TransportHandle handle;
+        synchronized (handleLock) {
+            handle = transportHandle;
+            if (handle == null || handle.sessionId != sessionId) {
+                releaseProxies(handle);
+                handle = new TransportHandle(sessionId);
+                transportHandle = handle;
+            }
+        }
+        ProxyInterfaces proxyInterfaces = handle.proxies.get(timeout);
+        if (proxyInterfaces == null) {
+            proxyInterfaces = createProxyInterfaces(sessionId, timeout);
+            ProxyInterfaces cached = handle.proxies.putIfAbsent(timeout, proxyInterfaces);
+            if (cached != null) {
+                proxyInterfaces.proxyObj.release();
+                proxyInterfaces = cached;
+            }
+        }
+        return proxyInterfaces;
+    }
+
+    /**
+     * Create a proxy object that implements both the OnboardingTransport and
+     * the org.freedesktop.DBus.Properties interfaces
+     *
+     * @param sessionId the session id
+     * @param timeout the reply timeout in msec
+     * @return the interface handles of the new proxy object
+     */
+    private ProxyInterfaces createProxyInterfaces(int sessionId, int timeout) {
+        ProxyBusObject proxyObj = m_bus.getProxyBusObject(getPeerName(), OnboardingTransport.OBJ_PATH, sessionId, new Class<?>[] { OnboardingTransport.class, Properties.class });
+        proxyObj.setReplyTimeout(timeout);
+        // We make calls to the methods of the AllJoyn object through one of its
+        // interfaces.
+        return new ProxyInterfaces(proxyObj, proxyObj.getInterface(OnboardingTransport.class), proxyObj.getInterface(Properties.class));
+    }
+
+    /**
+     * Drop the cached interface handles. The next call creates new ones.
+     */
+    private void invalidateTransportHandle() {
+        TransportHandle handle;
+        synchronized (handleLock) {
+            handle = transportHandle;
+            transportHandle = null;
+        }
+        releaseProxies(handle);
+    }
+
+    /**
+     * Release the proxy objects of dropped interface handles
+     *
+     * @param handle the dropped interface handles, may be null
+     */
+    private static void releaseProxies(TransportHandle handle) {
+        if (handle == null) {
+            return;
+        }
+        for (ProxyInterfaces proxyInterfaces : handle.proxies.values()) {
+            proxyInterfaces.proxyObj.release();
+        }
     }
 
     @Override
     public short getVersion() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        /*
-         * We make calls to the methods of the AllJoyn object through one of its
-         * interfaces.
-         */
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        return getVersion(null);
+    }
+
+    @Override
+    public short getVersion(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.GET_VERSION, deadline).transport;
         return onboardingTransport.getVersion();
     }
 
     @Override
     public void connectWiFi() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        connectWiFi(null);
+    }
+
+    @Override
+    public void connectWiFi(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.CONNECT, deadline).transport;
         onboardingTransport.Connect();
     }
 
     @Override
     public ConfigureWifiMode configureWiFi(String ssid, String passphrase, AuthType  authType) throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        return configureWiFi(ssid, passphrase, authType, null);
+    }
+
+    @Override
+    public ConfigureWifiMode configureWiFi(String ssid, String passphrase, AuthType authType, OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.CONFIGURE_WIFI, deadline).transport;
 
         short val=onboardingTransport.ConfigureWiFi(ssid, passphrase, authType.getTypeId());
         ConfigureWifiMode ret=ConfigureWifiMode.getConfigureWifiModeByValue(val);
@@ -114,66 +340,143 @@ public class OnboardingClientImpl extends ClientBaseImpl implements OnboardingCl
 
     @Override
     public void offboard() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        offboard(null);
+    }
+
+    @Override
+    public void offboard(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.OFFBOARD, deadline).transport;
         onboardingTransport.Offboard();
     }
 
     @Override
     public ScanInfo getScanInfo() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        return getScanInfo(null);
+    }
+
+    @Override
+    public ScanTable getScanTable() throws BusException {
+        return ScanTable.fromScanInfo(getScanInfo(null));
+    }
+
+    @Override
+    public ScanInfo getScanInfo(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.GET_SCAN_INFO, deadline).transport;
         return onboardingTransport.GetScanInfo();
     }
 
     @Override
     public short getState() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        return getState(null);
+    }
+
+    @Override
+    public short getState(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.GET_STATE, deadline).transport;
         return onboardingTransport.getState();
     }
 
     @Override
     public OBLastError GetLastError() throws BusException {
-        ProxyBusObject proxyObj = getProxyObject();
-        // We make calls to the methods of the AllJoyn object through one of its
-        // interfaces.
-        OnboardingTransport onboardingTransport = proxyObj.getInterface(OnboardingTransport.class);
+        return GetLastError(null);
+    }
+
+    @Override
+    public OBLastError GetLastError(OnboardingDeadline deadline) throws BusException {
+        OnboardingTransport onboardingTransport = getProxyInterfaces(OnboardingCallTimeouts.Call.GET_LAST_ERROR, deadline).transport;
         return onboardingTransport.getLastError();
     }
 
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot() throws BusException {
+        return getStatusSnapshot(null);
+    }
+
+    @Override
+    public OnboardingStatusSnapshot getStatusSnapshot(OnboardingDeadline deadline) throws BusException {
+        Properties properties = getProxyInterfaces(OnboardingCallTimeouts.Call.GET_STATUS_SNAPSHOT, deadline).properties;
+        Map<String, Variant> values = properties.GetAll(OnboardingTransport.INTERFACE_NAME);
+        if (values == null) {
+            throw new BusException("GetAll of '" + OnboardingTransport.INTERFACE_NAME + "' returned no properties");
+        }
+        short version = getPropertyValue(values, VERSION_PROPERTY, Short.class);
+        short state = getPropertyValue(values, STATE_PROPERTY, Short.class);
+        OBLastError lastError = getPropertyValue(values, LAST_ERROR_PROPERTY, OBLastError.class);
+        return new OnboardingStatusSnapshot(version, state, lastError.getErrorCode(), lastError.getErrorMessage());
+    }
+
+    /**
+     * Extract a property value from a GetAll reply
+     *
+     * @param values the GetAll reply
+     * @param name the property name
+     * @param type the expected value type
+     * @return the property value
+     * @throws BusException if the property is missing or has an unexpected type
+     */
+    private static <T> T getPropertyValue(Map<String, Variant> values, String name, Class<T> type) throws BusException {
+        Variant variant = values.get(name);
+        if (variant == null) {
+            throw new BusException("GetAll of '" + OnboardingTransport.INTERFACE_NAME + "' is missing the property '" + name + "'");
+        }
+        T value = variant.getObject(type);
+        if (value == null) {
+            throw new BusException("GetAll of '" + OnboardingTransport.INTERFACE_NAME + "' returned a null '" + name + "'");
+        }
+        return value;
+    }
+
     @Override
     public void registerConnectionResultListener(ConnectionResultListener listener) throws BusException {
+        registerConnectionResultListener(listener, null);
+    }
 
-        if (receiver == null) {
-            receiver = new ConnectionResultReceiver();
+    @Override
+    public synchronized void registerConnectionResultListener(ConnectionResultListener listener, Executor executor) throws BusException {
+        if (listener == null) {
+            throw new BusException("registerConnectionResultListener has failed, listener is null");
         }
+        routeConnectionResultSignals();
+        connectionResultListeners.addListener(listener, executor);
+    }
 
-        Status status = this.m_bus.registerBusObject(receiver, CONNECTION_RESULT_PATH);
-        if (status != Status.OK) {
-            throw new BusException("registerBusObject  " + CONNECTION_RESULT_PATH + " signal handler has failed, Status: '" + status + "'");
+    @Override
+    public synchronized void unRegisterConnectionResultListener(ConnectionResultListener listener) {
+        connectionResultListeners.removeListener(listener);
+        if (connectionResultListeners.isEmpty()) {
+            unrouteConnectionResultSignals();
         }
+    }
 
-        status = this.m_bus.registerSignalHandlers(receiver);
-        if (status != Status.OK) {
-            throw new BusException("registerSignalHandlers  " + CONNECTION_RESULT_PATH + " signal handler has failed, Status: '" + status + "'");
+    /**
+     * Route the ConnectionResult signals of the current session to the
+     * registered listeners, replacing the route of a previous session.
+     * Called with the client's lock held.
+     *
+     * @throws BusException if the route can't be registered
+     */
+    private void routeConnectionResultSignals() throws BusException {
+        String sender = getPeerName();
+        int sessionId = getSessionId();
+        if (routedSender != null && (routedSessionId != sessionId || !routedSender.equals(sender))) {
+            unrouteConnectionResultSignals();
         }
 
-        this.connectionResultListener = listener;
+        if (routedSender == null) {
+            ConnectionResultSignalRouter.getInstance(m_bus).register(sender, sessionId, connectionResultListeners);
+            routedSender = sender;
+            routedSessionId = sessionId;
+        }
     }
 
-    @Override
-    public void unRegisterConnectionResultListener(ConnectionResultListener listener) {
-        if (receiver != null) {
-            this.connectionResultListener=null;
-            this.m_bus.unregisterSignalHandlers(receiver);
-            this.m_bus.unregisterBusObject(receiver);
+    /**
+     * Stop routing the ConnectionResult signals to the registered listeners.
+     * Called with the client's lock held.
+     */
+    private void unrouteConnectionResultSignals() {
+        if (routedSender != null) {
+            ConnectionResultSignalRouter.getInstance(m_bus).unregister(routedSender, routedSessionId);
+            routedSender = null;
         }
     }
 
@@ -0,0 +1,59 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+/**
+ * An overall time budget shared by the calls of a multi step flow, for
+ * example configuring the onboardee and then telling it to connect. Each call
+ * made with the deadline uses a reply timeout no longer than the remaining
+ * budget, and fails with {@link OnboardingDeadlineExceededException} once the
+ * budget is spent.
+ */
+public class OnboardingDeadline {
+
+    /**
+     * The time at which the budget expires, in {@link System#nanoTime()} units
+     */
+    private final long expiresAtNanos;
+
+    /**
+     * Constructor
+     *
+     * @param budget the time budget in msec, starting now
+     */
+    public OnboardingDeadline(long budget) {
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative");
+        }
+        this.expiresAtNanos = System.nanoTime() + budget * 1000000L;
+    }
+
+    /**
+     * @return the remaining budget in msec, 0 if the deadline has expired
+     */
+    public long getRemainingTime() {
+        long remaining = (expiresAtNanos - System.nanoTime()) / 1000000L;
+        return remaining > 0 ? remaining : 0;
+    }
+
+    /**
+     * @return true if the budget has been spent
+     */
+    public boolean isExpired() {
+        return getRemainingTime() == 0;
+    }
+}
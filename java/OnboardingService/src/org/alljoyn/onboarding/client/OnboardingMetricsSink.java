@@ -0,0 +1,48 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import org.alljoyn.onboarding.client.OnboardingCallTimeouts.Call;
+
+/**
+ * Receives the measurements of an {@link InstrumentedOnboardingClient}. An
+ * implementation may aggregate them, as {@link OnboardingCallMetrics} does,
+ * or forward them to a monitoring system. Called on the threads making the
+ * calls, so an implementation must be thread safe and must not block.
+ */
+public interface OnboardingMetricsSink {
+
+    /**
+     * Called when a call starts
+     *
+     * @param call the org.alljoyn.Onboarding call
+     */
+    public void onCallStarted(Call call);
+
+    /**
+     * Called when a call completes
+     *
+     * @param call the org.alljoyn.Onboarding call
+     * @param latencyNanos duration of the call in nanoseconds
+     * @param outcome {@link InstrumentedOnboardingClient#OUTCOME_OK} on
+     *            success. Otherwise the AllJoyn error name of an error reply,
+     *            the name of the AllJoyn status of the failure, or the simple
+     *            class name of the exception.
+     */
+    public void onCallCompleted(Call call, long latencyNanos, String outcome);
+}
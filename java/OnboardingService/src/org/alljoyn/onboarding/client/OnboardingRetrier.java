@@ -0,0 +1,163 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.Random;
+
+import org.alljoyn.bus.BusException;
+
+/**
+ * Runs an operation made of {@link OnboardingClient} calls, retrying it on
+ * transient failures according to an {@link OnboardingRetryPolicy}. Each
+ * attempt is given an {@link OnboardingDeadline} bounded by both the attempt
+ * timeout and the remaining time budget of the operation, to be passed to the
+ * deadline overloads of {@link OnboardingClient}. The outcome of every
+ * operation is counted in an {@link OnboardingRetryMetrics}.
+ */
+public class OnboardingRetrier {
+
+    /**
+     * An operation that may be attempted several times. It should be
+     * idempotent, and may restore the session with the onboardee before its
+     * calls.
+     *
+     * @param <T> the result of the operation
+     */
+    public static interface Operation<T> {
+
+        /**
+         * Attempt the operation once
+         *
+         * @param deadline the time budget of this attempt
+         * @return the result of the operation
+         * @throws BusException if the attempt fails
+         */
+        public T attempt(OnboardingDeadline deadline) throws BusException;
+    }
+
+    private final OnboardingRetryPolicy policy;
+    private final OnboardingRetryMetrics metrics;
+    private final Random random = new Random();
+
+    /**
+     * Constructor using the default policy
+     */
+    public OnboardingRetrier() {
+        this(new OnboardingRetryPolicy(), new OnboardingRetryMetrics());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param policy decides whether and when a failed attempt is retried
+     * @param metrics counts the outcome of the operations
+     */
+    public OnboardingRetrier(OnboardingRetryPolicy policy, OnboardingRetryMetrics metrics) {
+        if (policy == null || metrics == null) {
+            throw new IllegalArgumentException("policy and metrics must not be null");
+        }
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the retry policy
+     */
+    public OnboardingRetryPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the counters of the operations run by this retrier
+     */
+    public OnboardingRetryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Run the operation until it succeeds, fails with an error that isn't
+     * retried, or runs out of attempts or time.
+     *
+     * @param operation the operation to run
+     * @return the result of the successful attempt
+     * @throws BusException the failure of the last attempt. If the thread is
+     *             interrupted while waiting for a retry the last failure is
+     *             thrown and the interrupt status is kept.
+     */
+    public <T> T run(Operation<T> operation) throws BusException {
+        return run(operation, null);
+    }
+
+    /**
+     * Same as {@link #run(Operation)}, as a step of a flow whose steps share
+     * a deadline: the time budget of the operation, retries included, is cut
+     * to the remaining time of the deadline of the flow.
+     *
+     * @param operation the operation to run
+     * @param parent the deadline of the flow, or null for none
+     * @return the result of the successful attempt
+     * @throws BusException the failure of the last attempt, or
+     *             {@link OnboardingDeadlineExceededException} if the deadline
+     *             of the flow expired before the first attempt
+     */
+    public <T> T run(Operation<T> operation, OnboardingDeadline parent) throws BusException {
+        long timeBudget = policy.getTimeBudget();
+        if (parent != null) {
+            if (parent.isExpired()) {
+                metrics.onBudgetExhausted();
+                throw new OnboardingDeadlineExceededException("Deadline expired before the operation");
+            }
+            timeBudget = Math.min(timeBudget, parent.getRemainingTime());
+        }
+        OnboardingDeadline budget = new OnboardingDeadline(timeBudget);
+        int attempt = 0;
+        while (true) {
+            ++attempt;
+            metrics.onAttempt();
+            BusException failure;
+            try {
+                T result = operation.attempt(new OnboardingDeadline(Math.min(policy.getAttemptTimeout(), budget.getRemainingTime())));
+                metrics.onSuccess(attempt);
+                return result;
+            } catch (BusException e) {
+                failure = e;
+            }
+
+            if (!policy.isRetryable(failure)) {
+                metrics.onFatalFailure();
+                throw failure;
+            }
+            if (attempt >= policy.getMaxAttempts()) {
+                metrics.onAttemptsExhausted();
+                throw failure;
+            }
+            long backoff = policy.getBackoff(attempt, random);
+            if (backoff >= budget.getRemainingTime()) {
+                metrics.onBudgetExhausted();
+                throw failure;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                metrics.onFatalFailure();
+                throw failure;
+            }
+        }
+    }
+}
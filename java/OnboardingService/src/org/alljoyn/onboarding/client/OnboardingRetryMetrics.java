@@ -0,0 +1,119 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the operations run by an {@link OnboardingRetrier}. Tells how
+ * often a retry saved an operation that would otherwise have failed, and why
+ * operations failed. Safe to read from any thread.
+ */
+public class OnboardingRetryMetrics {
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong succeededFirstAttempt = new AtomicLong();
+    private final AtomicLong savedByRetry = new AtomicLong();
+    private final AtomicLong failedFatal = new AtomicLong();
+    private final AtomicLong failedAttemptsExhausted = new AtomicLong();
+    private final AtomicLong failedBudgetExhausted = new AtomicLong();
+
+    void onAttempt() {
+        attempts.incrementAndGet();
+    }
+
+    void onSuccess(int attempt) {
+        operations.incrementAndGet();
+        if (attempt == 1) {
+            succeededFirstAttempt.incrementAndGet();
+        } else {
+            savedByRetry.incrementAndGet();
+        }
+    }
+
+    void onFatalFailure() {
+        operations.incrementAndGet();
+        failedFatal.incrementAndGet();
+    }
+
+    void onAttemptsExhausted() {
+        operations.incrementAndGet();
+        failedAttemptsExhausted.incrementAndGet();
+    }
+
+    void onBudgetExhausted() {
+        operations.incrementAndGet();
+        failedBudgetExhausted.incrementAndGet();
+    }
+
+    /**
+     * @return number of completed operations, successful or not
+     */
+    public long getOperations() {
+        return operations.get();
+    }
+
+    /**
+     * @return number of attempts of all the operations
+     */
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * @return number of operations that succeeded on their first attempt
+     */
+    public long getSucceededFirstAttempt() {
+        return succeededFirstAttempt.get();
+    }
+
+    /**
+     * @return number of operations that failed at first and succeeded on a retry
+     */
+    public long getSavedByRetry() {
+        return savedByRetry.get();
+    }
+
+    /**
+     * @return number of operations that failed with an error that isn't retried
+     */
+    public long getFailedFatal() {
+        return failedFatal.get();
+    }
+
+    /**
+     * @return number of operations that failed on their last allowed attempt
+     */
+    public long getFailedAttemptsExhausted() {
+        return failedAttemptsExhausted.get();
+    }
+
+    /**
+     * @return number of operations that failed because their time budget was spent
+     */
+    public long getFailedBudgetExhausted() {
+        return failedBudgetExhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "OnboardingRetryMetrics [operations=" + operations + ", attempts=" + attempts + ", succeededFirstAttempt=" + succeededFirstAttempt + ", savedByRetry=" + savedByRetry
+                + ", failedFatal=" + failedFatal + ", failedAttemptsExhausted=" + failedAttemptsExhausted + ", failedBudgetExhausted=" + failedBudgetExhausted + "]";
+    }
+}
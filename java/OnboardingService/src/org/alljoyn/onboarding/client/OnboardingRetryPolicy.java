@@ -0,0 +1,202 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
+import org.alljoyn.bus.Status;
+
+/**
+ * Decides whether and when a failed {@link OnboardingClient} call is retried
+ * by {@link OnboardingRetrier}. A call is retried on a transient
+ * {@link Status}, such as a reply timeout or a lost session, while errors
+ * returned by the onboardee, such as org.alljoyn.Error.OutOfRange, are fatal.
+ * The delay between attempts grows exponentially with a random jitter, and
+ * both the number of attempts and the total time of an operation are bounded.
+ */
+public class OnboardingRetryPolicy {
+
+    /**
+     * Default maximal number of attempts of an operation {@value #DEFAULT_MAX_ATTEMPTS}
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default time budget of an operation, all attempts included {@value #DEFAULT_TIME_BUDGET} msec
+     */
+    public static final int DEFAULT_TIME_BUDGET = 20000;
+
+    /**
+     * Default time budget of a single attempt {@value #DEFAULT_ATTEMPT_TIMEOUT} msec
+     */
+    public static final int DEFAULT_ATTEMPT_TIMEOUT = 8000;
+
+    /**
+     * Default delay before the first retry {@value #DEFAULT_INITIAL_BACKOFF} msec
+     */
+    public static final int DEFAULT_INITIAL_BACKOFF = 500;
+
+    /**
+     * Default maximal delay between two attempts {@value #DEFAULT_MAX_BACKOFF} msec
+     */
+    public static final int DEFAULT_MAX_BACKOFF = 4000;
+
+    /**
+     * The statuses that are retried by default
+     */
+    private static final Set<Status> DEFAULT_RETRYABLE_STATUSES = EnumSet.of(Status.TIMEOUT, Status.BUS_NO_SESSION, Status.BUS_NOT_CONNECTED,
+            Status.ALLJOYN_JOINSESSION_REPLY_UNREACHABLE, Status.ALLJOYN_JOINSESSION_REPLY_CONNECT_FAILED, Status.ALLJOYN_JOINSESSION_REPLY_FAILED);
+
+    /**
+     * Prefix of the status text in the message of a {@link BusException}
+     */
+    private static final String STATUS_TEXT_PREFIX = "ER_";
+
+    private final int maxAttempts;
+    private final int timeBudget;
+    private final int attemptTimeout;
+    private final int initialBackoff;
+    private final int maxBackoff;
+    private final Set<Status> retryableStatuses;
+
+    /**
+     * Constructor using the default values
+     */
+    public OnboardingRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_TIME_BUDGET, DEFAULT_ATTEMPT_TIMEOUT, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF, DEFAULT_RETRYABLE_STATUSES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxAttempts maximal number of attempts of an operation, 1 for no retry
+     * @param timeBudget time budget of an operation in msec, all attempts included
+     * @param attemptTimeout time budget of a single attempt in msec
+     * @param initialBackoff delay before the first retry in msec, doubled on every further retry
+     * @param maxBackoff maximal delay between two attempts in msec
+     * @param retryableStatuses the statuses that are retried
+     */
+    public OnboardingRetryPolicy(int maxAttempts, int timeBudget, int attemptTimeout, int initialBackoff, int maxBackoff, Set<Status> retryableStatuses) {
+        if (maxAttempts <= 0 || timeBudget <= 0 || attemptTimeout <= 0 || initialBackoff < 0 || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("invalid retry policy parameters");
+        }
+        if (retryableStatuses == null) {
+            throw new IllegalArgumentException("retryableStatuses must not be null");
+        }
+        this.maxAttempts = maxAttempts;
+        this.timeBudget = timeBudget;
+        this.attemptTimeout = attemptTimeout;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retryableStatuses = retryableStatuses.isEmpty() ? EnumSet.noneOf(Status.class) : EnumSet.copyOf(retryableStatuses);
+    }
+
+    /**
+     * @return a copy of the statuses that are retried by default: reply
+     *         timeout, lost or missing session, and failures to join a session
+     *         with an unreachable peer
+     */
+    public static Set<Status> getDefaultRetryableStatuses() {
+        return EnumSet.copyOf(DEFAULT_RETRYABLE_STATUSES);
+    }
+
+    /**
+     * @return maximal number of attempts of an operation
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return time budget of an operation in msec, all attempts included
+     */
+    public int getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * @return time budget of a single attempt in msec
+     */
+    public int getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    /**
+     * Whether a failed attempt may be retried. An expired deadline is never
+     * retried. An error reply of the onboardee is retried only if its status
+     * is retryable, which excludes the named org.alljoyn errors. Any other
+     * {@link BusException} is retried if its message is the text of a
+     * retryable status, for example "ER_TIMEOUT".
+     *
+     * @param e the failure of the attempt
+     * @return true if the attempt may be retried
+     */
+    public boolean isRetryable(BusException e) {
+        if (e instanceof OnboardingDeadlineExceededException) {
+            return false;
+        }
+        Status status = getStatus(e);
+        return status != null && retryableStatuses.contains(status);
+    }
+
+    /**
+     * Delay before a retry: the exponential backoff, capped by the maximal
+     * backoff, of which a random half is added to the other half.
+     *
+     * @param retry the number of the retry, starting at 1
+     * @param random source of the jitter
+     * @return the delay in msec
+     */
+    public long getBackoff(int retry, Random random) {
+        long backoff = initialBackoff;
+        for (int i = 1; i < retry && backoff < maxBackoff; i++) {
+            backoff *= 2;
+        }
+        backoff = Math.min(backoff, maxBackoff);
+        long half = backoff / 2;
+        return half + (long) (random.nextDouble() * (backoff - half));
+    }
+
+    /**
+     * @param e a failure of a call
+     * @return the status of an error reply, or the status whose text is the
+     *         message of another BusException, or null if none
+     */
+    static Status getStatus(BusException e) {
+        if (e instanceof ErrorReplyBusException) {
+            return ((ErrorReplyBusException) e).getErrorStatus();
+        }
+        String message = e.getMessage();
+        if (message == null) {
+            return null;
+        }
+        String name = message.trim();
+        if (name.startsWith(STATUS_TEXT_PREFIX)) {
+            name = name.substring(STATUS_TEXT_PREFIX.length());
+        }
+        try {
+            return Status.valueOf(name);
+        } catch (IllegalArgumentException notAStatus) {
+            return null;
+        }
+    }
+}
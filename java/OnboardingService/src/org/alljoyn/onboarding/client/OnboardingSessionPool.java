@@ -0,0 +1,308 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.services.common.ServiceAvailabilityListener;
+
+/**
+ * Shares {@link OnboardingClient}s, and the sessions they joined, among the
+ * users of the same onboardee. Clients are keyed by the service name and port
+ * of the onboardee, so acquiring the client of an onboardee that already has a
+ * live session skips the JoinSession and the secure interface handshake.
+ * Clients are reference counted. A client that is no longer acquired is
+ * disconnected after an idle time to live, unless it is acquired again
+ * before then. A client whose session is lost is dropped from the pool, so
+ * that the next acquire creates a new one, and is disconnected once released.
+ */
+public class OnboardingSessionPool {
+
+    /**
+     * Default time a released client is kept connected {@value #DEFAULT_IDLE_TTL} msec
+     */
+    public static final int DEFAULT_IDLE_TTL = 30000;
+
+    /**
+     * The BusAttachment of the clients
+     */
+    private final BusAttachment bus;
+
+    /**
+     * Time a released client is kept connected in msec
+     */
+    private final int idleTtl;
+
+    /**
+     * The live entries by onboardee
+     */
+    private final Map<PoolKey, PoolEntry> entries = new HashMap<PoolKey, PoolEntry>();
+
+    /**
+     * The entries by client, including the ones dropped after a session loss that are still acquired
+     */
+    private final Map<OnboardingClient, PoolEntry> entriesByClient = new IdentityHashMap<OnboardingClient, PoolEntry>();
+
+    /**
+     * Disconnects idle clients. Created on first use.
+     */
+    private Timer idleTimer = null;
+
+    /**
+     * Identifies an onboardee: its service name and session port
+     */
+    private static class PoolKey {
+        private final String serviceName;
+        private final short port;
+
+        private PoolKey(String serviceName, short port) {
+            this.serviceName = serviceName;
+            this.port = port;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * serviceName.hashCode() + port;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) obj;
+            return port == other.port && serviceName.equals(other.serviceName);
+        }
+    }
+
+    /**
+     * A pooled client with its reference count and the listeners of its users
+     */
+    private class PoolEntry implements ServiceAvailabilityListener {
+        private final PoolKey key;
+        private final CopyOnWriteArrayList<ServiceAvailabilityListener> listeners = new CopyOnWriteArrayList<ServiceAvailabilityListener>();
+        private OnboardingClient client;
+        private int refCount = 0;
+        private boolean isValid = true;
+
+        /**
+         * Incremented on every release, so that an idle timeout only closes
+         * the entry if it wasn't acquired and released again meanwhile
+         */
+        private int releaseCount = 0;
+
+        private PoolEntry(PoolKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Drop the entry from the pool and notify its users
+         */
+        @Override
+        public void connectionLost() {
+            OnboardingClient clientToClose = null;
+            synchronized (OnboardingSessionPool.this) {
+                if (isValid) {
+                    isValid = false;
+                    if (entries.get(key) == this) {
+                        entries.remove(key);
+                    }
+                }
+                if (refCount == 0 && entriesByClient.remove(client) != null) {
+                    clientToClose = client;
+                }
+            }
+            for (ServiceAvailabilityListener listener : listeners) {
+                listener.connectionLost();
+            }
+            if (clientToClose != null) {
+                clientToClose.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Constructor with an idle time to live of {@value #DEFAULT_IDLE_TTL} msec
+     *
+     * @param bus the BusAttachment of the clients
+     */
+    public OnboardingSessionPool(BusAttachment bus) {
+        this(bus, DEFAULT_IDLE_TTL);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bus the BusAttachment of the clients
+     * @param idleTtl time a released client is kept connected in msec, 0 to disconnect it right away
+     */
+    public OnboardingSessionPool(BusAttachment bus, int idleTtl) {
+        if (bus == null) {
+            throw new IllegalArgumentException("bus must not be null");
+        }
+        if (idleTtl < 0) {
+            throw new IllegalArgumentException("idleTtl must not be negative");
+        }
+        this.bus = bus;
+        this.idleTtl = idleTtl;
+    }
+
+    /**
+     * Acquire the client of an onboardee, creating it if the pool has no live
+     * one. The client may already be connected. Each acquire must be matched
+     * by a {@link #release(OnboardingClient, ServiceAvailabilityListener)}.
+     *
+     * @param serviceName the bus name of the onboardee
+     * @param port the session port of the onboardee
+     * @param listener notified if the session is lost while acquired, may be null
+     * @return the client of the onboardee
+     */
+    public synchronized OnboardingClient acquire(String serviceName, short port, ServiceAvailabilityListener listener) {
+        if (serviceName == null) {
+            throw new IllegalArgumentException("serviceName must not be null");
+        }
+        PoolKey key = new PoolKey(serviceName, port);
+        PoolEntry entry = entries.get(key);
+        if (entry == null) {
+            entry = new PoolEntry(key);
+            entry.client = new OnboardingClientImpl(serviceName, bus, entry, port);
+            entries.put(key, entry);
+            entriesByClient.put(entry.client, entry);
+        }
+        ++entry.refCount;
+        if (listener != null) {
+            entry.listeners.add(listener);
+        }
+        return entry.client;
+    }
+
+    /**
+     * Release a client acquired from the pool. A client that is no longer
+     * acquired is disconnected after the idle time to live, or right away if
+     * its session was lost.
+     *
+     * @param client the acquired client
+     * @param listener the listener given to {@link #acquire(String, short, ServiceAvailabilityListener)}, may be null
+     */
+    public void release(OnboardingClient client, ServiceAvailabilityListener listener) {
+        OnboardingClient clientToClose = null;
+        synchronized (this) {
+            final PoolEntry entry = entriesByClient.get(client);
+            if (entry == null || entry.refCount == 0) {
+                return;
+            }
+            if (listener != null) {
+                entry.listeners.remove(listener);
+            }
+            if (--entry.refCount > 0) {
+                return;
+            }
+
+            if (!entry.isValid || idleTtl == 0) {
+                clientToClose = removeEntry(entry);
+            } else {
+                final int releaseCount = ++entry.releaseCount;
+                if (idleTimer == null) {
+                    idleTimer = new Timer("OnboardingSessionPool", true);
+                }
+                idleTimer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        closeIfIdle(entry, releaseCount);
+                    }
+                }, idleTtl);
+            }
+        }
+        if (clientToClose != null) {
+            clientToClose.disconnect();
+        }
+    }
+
+    /**
+     * @return number of clients in the pool, acquired or idle
+     */
+    public synchronized int size() {
+        return entriesByClient.size();
+    }
+
+    /**
+     * Disconnect all the clients of the pool, including the acquired ones
+     */
+    public void close() {
+        List<OnboardingClient> clientsToClose;
+        synchronized (this) {
+            clientsToClose = new ArrayList<OnboardingClient>(entriesByClient.keySet());
+            for (PoolEntry entry : entriesByClient.values()) {
+                entry.isValid = false;
+                entry.refCount = 0;
+            }
+            entries.clear();
+            entriesByClient.clear();
+            if (idleTimer != null) {
+                idleTimer.cancel();
+                idleTimer = null;
+            }
+        }
+        for (OnboardingClient client : clientsToClose) {
+            client.disconnect();
+        }
+    }
+
+    /**
+     * Disconnect the client of the entry if it is still idle since the given release
+     *
+     * @param entry the released entry
+     * @param releaseCount the release count of the entry when it was released
+     */
+    private void closeIfIdle(PoolEntry entry, int releaseCount) {
+        OnboardingClient clientToClose;
+        synchronized (this) {
+            if (entry.refCount > 0 || entry.releaseCount != releaseCount || entriesByClient.get(entry.client) != entry) {
+                return;
+            }
+            clientToClose = removeEntry(entry);
+        }
+        clientToClose.disconnect();
+    }
+
+    /**
+     * Remove the entry from the pool. Called with the pool's lock held.
+     *
+     * @param entry the entry to remove
+     * @return the client of the entry, to be disconnected without the lock held
+     */
+    private OnboardingClient removeEntry(PoolEntry entry) {
+        entry.isValid = false;
+        if (entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+        }
+        entriesByClient.remove(entry.client);
+        return entry.client;
+    }
+}
@@ -0,0 +1,361 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.onboarding.OnboardingService.OnboardingState;
+
+/**
+ * Tracks the validation progress of an onboardee by polling its State
+ * property, and reports every change of state. Polling starts fast and backs
+ * off exponentially with a random jitter, since every poll costs airtime on
+ * the soft AP. The interval is reset to its initial value whenever the state
+ * changes. Polling stops when the state reaches
+ * PERSONAL_AP_CONFIGURED_VALIDATED or PERSONAL_AP_CONFIGURED_ERROR, when the
+ * session drops, when polls keep failing, when the overall timeout expires or
+ * when {@link #stop()} is called.
+ * <p>
+ * The poll timeout is set as the GET_STATE reply timeout of the
+ * {@link OnboardingClientImpl} under the client, so that the polls reuse its
+ * cached interface handles. A deadline is only passed on to a poll when the
+ * overall timeout leaves less than the poll timeout.
+ * <p>
+ * The listener is called on the polling thread.
+ */
+public class OnboardingStatePoller {
+
+    /**
+     * Default interval before the first poll {@value #DEFAULT_INITIAL_INTERVAL} msec
+     */
+    public static final int DEFAULT_INITIAL_INTERVAL = 250;
+
+    /**
+     * Default maximal interval between two polls {@value #DEFAULT_MAX_INTERVAL} msec
+     */
+    public static final int DEFAULT_MAX_INTERVAL = 4000;
+
+    /**
+     * Default overall polling timeout {@value #DEFAULT_TIMEOUT} msec
+     */
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * Default reply timeout of a single poll {@value #DEFAULT_POLL_TIMEOUT} msec
+     */
+    public static final int DEFAULT_POLL_TIMEOUT = 3000;
+
+    /**
+     * Number of failed polls in a row after which polling stops
+     */
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    /**
+     * Why polling stopped
+     */
+    public static enum StopReason {
+
+        /**
+         * The state reached PERSONAL_AP_CONFIGURED_VALIDATED or PERSONAL_AP_CONFIGURED_ERROR
+         */
+        TERMINAL_STATE,
+
+        /**
+         * The session with the onboardee dropped
+         */
+        SESSION_LOST,
+
+        /**
+         * Several polls in a row failed
+         */
+        FAILED,
+
+        /**
+         * The overall timeout expired
+         */
+        TIMED_OUT,
+
+        /**
+         * {@link OnboardingStatePoller#stop()} was called
+         */
+        STOPPED
+    }
+
+    /**
+     * Receives the state changes of the onboardee
+     */
+    public static interface OnboardingStateListener {
+
+        /**
+         * Called for the first state read and for every change of state
+         *
+         * @param state the new state of the onboardee, null if the onboardee reported an unknown state id
+         * @param stateId the new state id
+         */
+        public void onStateChanged(OnboardingState state, short stateId);
+
+        /**
+         * Called once when polling stops
+         *
+         * @param reason why polling stopped
+         * @param lastState the last state read, null if none
+         * @param failure the failure of the last poll if polling stopped on failures, otherwise null
+         */
+        public void onPollingStopped(StopReason reason, OnboardingState lastState, BusException failure);
+    }
+
+    private final OnboardingClient client;
+    private final OnboardingStateListener listener;
+    private final int initialInterval;
+    private final int maxInterval;
+    private final int timeout;
+    private final int pollTimeout;
+    private final Random random = new Random();
+
+    /**
+     * Runs the polls. Null when not polling.
+     */
+    private Timer pollTimer = null;
+
+    /**
+     * The overall polling timeout
+     */
+    private OnboardingDeadline deadline = null;
+
+    /**
+     * Interval before the next poll in msec, before jitter
+     */
+    private int interval;
+
+    private Short lastStateId = null;
+    private int consecutiveFailures = 0;
+
+    /**
+     * True if the reply timeout of GET_STATE is the poll timeout
+     */
+    private boolean isPollTimeoutSet = false;
+
+    /**
+     * Constructor with the default intervals and timeouts
+     *
+     * @param client a connected client of the onboardee
+     * @param listener receives the state changes
+     */
+    public OnboardingStatePoller(OnboardingClient client, OnboardingStateListener listener) {
+        this(client, listener, DEFAULT_INITIAL_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_TIMEOUT, DEFAULT_POLL_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param client a connected client of the onboardee
+     * @param listener receives the state changes
+     * @param initialInterval interval before the first poll, and after a change of state, in msec
+     * @param maxInterval maximal interval between two polls in msec
+     * @param timeout overall polling timeout in msec
+     * @param pollTimeout reply timeout of a single poll in msec
+     */
+    public OnboardingStatePoller(OnboardingClient client, OnboardingStateListener listener, int initialInterval, int maxInterval, int timeout, int pollTimeout) {
+        if (client == null || listener == null) {
+            throw new IllegalArgumentException("client and listener must not be null");
+        }
+        if (initialInterval <= 0 || maxInterval < initialInterval || timeout <= 0 || pollTimeout <= 0) {
+            throw new IllegalArgumentException("invalid polling intervals or timeouts");
+        }
+        this.client = client;
+        this.listener = listener;
+        this.initialInterval = initialInterval;
+        this.maxInterval = maxInterval;
+        this.timeout = timeout;
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Start polling. Does nothing if already polling.
+     */
+    public synchronized void start() {
+        if (pollTimer != null) {
+            return;
+        }
+        pollTimer = new Timer("OnboardingStatePoller", true);
+        deadline = new OnboardingDeadline(timeout);
+        interval = initialInterval;
+        lastStateId = null;
+        consecutiveFailures = 0;
+        OnboardingClientImpl clientImpl = getClientImpl(client);
+        if (clientImpl != null) {
+            clientImpl.getCallTimeouts().setTimeout(OnboardingCallTimeouts.Call.GET_STATE, pollTimeout);
+        }
+        isPollTimeoutSet = clientImpl != null;
+        scheduleNextPoll();
+    }
+
+    /**
+     * @param client a client, possibly decorated
+     * @return the OnboardingClientImpl under the decorators of the client, null if none
+     */
+    private static OnboardingClientImpl getClientImpl(OnboardingClient client) {
+        while (true) {
+            if (client instanceof OnboardingClientImpl) {
+                return (OnboardingClientImpl) client;
+            } else if (client instanceof InstrumentedOnboardingClient) {
+                client = ((InstrumentedOnboardingClient) client).getDelegate();
+            } else if (client instanceof CapabilityAwareOnboardingClient) {
+                client = ((CapabilityAwareOnboardingClient) client).getDelegate();
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stop polling. The listener is told with {@link StopReason#STOPPED}.
+     */
+    public void stop() {
+        finish(StopReason.STOPPED, null);
+    }
+
+    /**
+     * Stop polling because the session dropped. To be called from the
+     * {@link org.alljoyn.services.common.ServiceAvailabilityListener} of the client.
+     */
+    public void connectionLost() {
+        finish(StopReason.SESSION_LOST, null);
+    }
+
+    /**
+     * @return true if polling
+     */
+    public synchronized boolean isPolling() {
+        return pollTimer != null;
+    }
+
+    /**
+     * Schedule the next poll after the current interval, with a jitter of up
+     * to a quarter of the interval either way. Called with the lock held.
+     */
+    private void scheduleNextPoll() {
+        int jitter = interval / 4;
+        long delay = interval - jitter + (jitter > 0 ? random.nextInt(2 * jitter + 1) : 0);
+        delay = Math.min(delay, deadline.getRemainingTime());
+        pollTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, delay);
+    }
+
+    /**
+     * Read the state once, on the polling thread
+     */
+    private void poll() {
+        synchronized (this) {
+            if (pollTimer == null) {
+                return;
+            }
+        }
+        if (deadline.isExpired()) {
+            finish(StopReason.TIMED_OUT, null);
+            return;
+        }
+        if (!client.isConnected()) {
+            finish(StopReason.SESSION_LOST, null);
+            return;
+        }
+
+        short stateId;
+        boolean isPollTimeoutUsed;
+        synchronized (this) {
+            isPollTimeoutUsed = isPollTimeoutSet;
+        }
+        try {
+            long remaining = deadline.getRemainingTime();
+            if (isPollTimeoutUsed && remaining >= pollTimeout) {
+                stateId = client.getState();
+            } else {
+                stateId = client.getState(new OnboardingDeadline(Math.min(pollTimeout, remaining)));
+            }
+        } catch (BusException e) {
+            boolean isFailed;
+            synchronized (this) {
+                isFailed = ++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES;
+            }
+            if (isFailed || deadline.isExpired()) {
+                finish(isFailed ? StopReason.FAILED : StopReason.TIMED_OUT, isFailed ? e : null);
+            } else {
+                reschedule(false);
+            }
+            return;
+        }
+
+        boolean isChanged;
+        synchronized (this) {
+            if (pollTimer == null) {
+                return;
+            }
+            consecutiveFailures = 0;
+            isChanged = lastStateId == null || lastStateId != stateId;
+            lastStateId = stateId;
+        }
+        OnboardingState state = OnboardingState.getStateById(stateId);
+        if (isChanged) {
+            listener.onStateChanged(state, stateId);
+        }
+        if (state == OnboardingState.PERSONAL_AP_CONFIGURED_VALIDATED || state == OnboardingState.PERSONAL_AP_CONFIGURED_ERROR) {
+            finish(StopReason.TERMINAL_STATE, null);
+        } else {
+            reschedule(isChanged);
+        }
+    }
+
+    /**
+     * Schedule the next poll, backing off unless the state just changed
+     *
+     * @param isChanged whether the last poll read a new state
+     */
+    private synchronized void reschedule(boolean isChanged) {
+        if (pollTimer == null) {
+            return;
+        }
+        interval = isChanged ? initialInterval : Math.min(interval * 2, maxInterval);
+        scheduleNextPoll();
+    }
+
+    /**
+     * Stop polling and tell the listener, once
+     *
+     * @param reason why polling stopped
+     * @param failure the failure of the last poll, may be null
+     */
+    private void finish(StopReason reason, BusException failure) {
+        Short stateId;
+        synchronized (this) {
+            if (pollTimer == null) {
+                return;
+            }
+            pollTimer.cancel();
+            pollTimer = null;
+            stateId = lastStateId;
+        }
+        listener.onPollingStopped(reason, stateId != null ? OnboardingState.getStateById(stateId) : null, failure);
+    }
+}
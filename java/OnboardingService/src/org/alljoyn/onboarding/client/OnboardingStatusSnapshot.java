@@ -0,0 +1,113 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+package org.alljoyn.onboarding.client;
+
+import org.alljoyn.onboarding.OnboardingService.OnboardingState;
+import org.alljoyn.onboarding.transport.OBLastError;
+
+/**
+ * An immutable snapshot of all the org.alljoyn.Onboarding properties of an
+ * onboardee: Version, State and LastError, as read by a single
+ * {@link OnboardingClient#getStatusSnapshot()} call.
+ */
+public class OnboardingStatusSnapshot {
+
+    /**
+     * The interface version
+     */
+    private final short version;
+
+    /**
+     * The onboarding state id
+     */
+    private final short state;
+
+    /**
+     * The last error code
+     */
+    private final short lastErrorCode;
+
+    /**
+     * The last error message
+     */
+    private final String lastErrorMessage;
+
+    /**
+     * Constructor
+     *
+     * @param version the interface version
+     * @param state the onboarding state id
+     * @param lastErrorCode the last error code
+     * @param lastErrorMessage the last error message
+     */
+    public OnboardingStatusSnapshot(short version, short state, short lastErrorCode, String lastErrorMessage) {
+        this.version = version;
+        this.state = state;
+        this.lastErrorCode = lastErrorCode;
+        this.lastErrorMessage = lastErrorMessage;
+    }
+
+    /**
+     * @return the interface version
+     */
+    public short getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the onboarding state id, see {@link OnboardingClient#getState()}
+     */
+    public short getState() {
+        return state;
+    }
+
+    /**
+     * @return the onboarding state, or null if the onboardee reported an unknown state id
+     */
+    public OnboardingState getOnboardingState() {
+        return OnboardingState.getStateById(state);
+    }
+
+    /**
+     * @return the last error code, see {@link OBLastError#getErrorCode()}
+     */
+    public short getLastErrorCode() {
+        return lastErrorCode;
+    }
+
+    /**
+     * @return the last error message, see {@link OBLastError#getErrorMessage()}
+     */
+    public String getLastErrorMessage() {
+        return lastErrorMessage;
+    }
+
+    /**
+     * @return a new OBLastError holding the last error code and message
+     */
+    public OBLastError getLastError() {
+        OBLastError lastError = new OBLastError();
+        lastError.setErrorCode(lastErrorCode);
+        lastError.setErrorMessage(lastErrorMessage);
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return "OnboardingStatusSnapshot [version=" + version + ", state=" + state + ", lastErrorCode=" + lastErrorCode + ", lastErrorMessage=" + lastErrorMessage + "]";
+    }
+}
@@ -0,0 +1,373 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.ConnectionResult;
+import org.alljoyn.onboarding.transport.ConnectionResult.ConnectionResponseType;
+import org.alljoyn.onboarding.transport.ConnectionResultListener;
+import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
+
+/**
+ * Sends the personal AP configuration to a connected onboardee and has it
+ * connect, as a single operation, in both Wi-Fi modes:
+ * <ul>
+ * <li>{@link ConfigureWifiMode#REGULAR}: ConfigureWiFi, then Connect.</li>
+ * <li>{@link ConfigureWifiMode#FAST_CHANNNEL}: ConfigureWiFi, then wait for
+ * the ConnectionResult signal, then Connect if the onboardee validated the
+ * personal AP.</li>
+ * </ul>
+ * The ConnectionResult listener is registered before ConfigureWiFi is sent,
+ * so that an early signal is not missed, and is always unregistered. The
+ * {@link Result} tells how long each phase took, whether the transaction
+ * succeeded or not. All the phases share one {@link OnboardingDeadline}.
+ */
+public class OnboardingTransaction {
+
+    /**
+     * Default overall timeout {@value #DEFAULT_TIMEOUT} msec
+     */
+    public static final long DEFAULT_TIMEOUT = 60 * 1000;
+
+    /**
+     * Default timeout for the ConnectionResult signal {@value #DEFAULT_SIGNAL_TIMEOUT} msec
+     */
+    public static final long DEFAULT_SIGNAL_TIMEOUT = 30 * 1000;
+
+    /**
+     * The phases of the transaction, in order
+     */
+    public static enum Phase {
+
+        /**
+         * The ConfigureWiFi call
+         */
+        CONFIGURE,
+
+        /**
+         * Waiting for the ConnectionResult signal, in fast channel mode only
+         */
+        WAIT_FOR_SIGNAL,
+
+        /**
+         * The Connect call
+         */
+        CONNECT
+    }
+
+    /**
+     * The outcome of a transaction and the timing of its phases. The time of
+     * a phase that didn't run is -1.
+     */
+    public static class Result {
+        private final long startTime;
+        private final long startNanos;
+        private final long[] phaseStartNanos = new long[Phase.values().length];
+        private final long[] phaseEndNanos = new long[Phase.values().length];
+        private long endNanos;
+        private ConfigureWifiMode mode = null;
+        private ConnectionResult connectionResult = null;
+        private Phase failedPhase = null;
+        private Exception failure = null;
+
+        private Result() {
+            startTime = System.currentTimeMillis();
+            startNanos = System.nanoTime();
+            Arrays.fill(phaseStartNanos, -1);
+            Arrays.fill(phaseEndNanos, -1);
+        }
+
+        private void phaseStarted(Phase phase) {
+            phaseStartNanos[phase.ordinal()] = System.nanoTime();
+        }
+
+        private void phaseEnded(Phase phase) {
+            phaseEndNanos[phase.ordinal()] = System.nanoTime();
+        }
+
+        private void failed(Phase phase, Exception e) {
+            phaseEnded(phase);
+            failedPhase = phase;
+            failure = e;
+        }
+
+        /**
+         * @return true if the onboardee was told to connect to the personal AP
+         */
+        public boolean isSuccessful() {
+            return failure == null;
+        }
+
+        /**
+         * @return the phase that failed, null if the transaction succeeded
+         */
+        public Phase getFailedPhase() {
+            return failedPhase;
+        }
+
+        /**
+         * @return the failure: a {@link BusException} of a call or of the
+         *         signal wait, or an {@link InterruptedException} if the
+         *         transaction was cancelled. Null if it succeeded.
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        /**
+         * @return the mode the onboardee answered ConfigureWiFi with, null if it didn't answer
+         */
+        public ConfigureWifiMode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return the ConnectionResult signal data, null if not received
+         */
+        public ConnectionResult getConnectionResult() {
+            return connectionResult;
+        }
+
+        /**
+         * @return the time the transaction started, in msec since the epoch
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @param phase a phase of the transaction
+         * @return the time the phase started, in msec since the epoch, -1 if it didn't run
+         */
+        public long getPhaseStartTime(Phase phase) {
+            long nanos = phaseStartNanos[phase.ordinal()];
+            return nanos < 0 ? -1 : startTime + (nanos - startNanos) / 1000000L;
+        }
+
+        /**
+         * @param phase a phase of the transaction
+         * @return the time the phase ended, in msec since the epoch, -1 if it didn't run
+         */
+        public long getPhaseEndTime(Phase phase) {
+            long nanos = phaseEndNanos[phase.ordinal()];
+            return nanos < 0 ? -1 : startTime + (nanos - startNanos) / 1000000L;
+        }
+
+        /**
+         * @param phase a phase of the transaction
+         * @return the duration of the phase in msec, -1 if it didn't run
+         */
+        public long getPhaseDuration(Phase phase) {
+            long start = phaseStartNanos[phase.ordinal()];
+            long end = phaseEndNanos[phase.ordinal()];
+            return start < 0 || end < 0 ? -1 : (end - start) / 1000000L;
+        }
+
+        /**
+         * @return the duration of the whole transaction in msec
+         */
+        public long getDuration() {
+            return (endNanos - startNanos) / 1000000L;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("OnboardingTransaction.Result [mode=").append(mode);
+            for (Phase phase : Phase.values()) {
+                sb.append(", ").append(phase).append("=").append(getPhaseDuration(phase)).append("ms");
+            }
+            sb.append(", total=").append(getDuration()).append("ms");
+            if (connectionResult != null) {
+                sb.append(", connectionResult=").append(connectionResult.getConnectionResponseType());
+            }
+            if (failure != null) {
+                sb.append(", failedPhase=").append(failedPhase).append(", failure=").append(failure);
+            }
+            return sb.append("]").toString();
+        }
+    }
+
+    private final OnboardingClient client;
+    private final String ssid;
+    private final String passphrase;
+    private final AuthType authType;
+    private final long timeout;
+    private final long signalTimeout;
+
+    /**
+     * Constructor, with a {@value #DEFAULT_TIMEOUT} msec overall timeout and
+     * a {@value #DEFAULT_SIGNAL_TIMEOUT} msec signal timeout
+     *
+     * @param client a connected client of the onboardee
+     * @param ssid the personal AP SSID
+     * @param passphrase the personal AP passphrase
+     * @param authType the authentication type of the AP
+     */
+    public OnboardingTransaction(OnboardingClient client, String ssid, String passphrase, AuthType authType) {
+        this(client, ssid, passphrase, authType, DEFAULT_TIMEOUT, DEFAULT_SIGNAL_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param client a connected client of the onboardee
+     * @param ssid the personal AP SSID
+     * @param passphrase the personal AP passphrase
+     * @param authType the authentication type of the AP
+     * @param timeout overall timeout of the transaction in msec
+     * @param signalTimeout timeout for the ConnectionResult signal in msec, within the overall timeout
+     */
+    public OnboardingTransaction(OnboardingClient client, String ssid, String passphrase, AuthType authType, long timeout, long signalTimeout) {
+        if (client == null || authType == null) {
+            throw new IllegalArgumentException("client and authType must not be null");
+        }
+        if (timeout <= 0 || signalTimeout <= 0) {
+            throw new IllegalArgumentException("timeouts must be positive");
+        }
+        this.client = client;
+        this.ssid = ssid;
+        this.passphrase = passphrase;
+        this.authType = authType;
+        this.timeout = timeout;
+        this.signalTimeout = signalTimeout;
+    }
+
+    /**
+     * Run the transaction on the given executor. Cancelling the future with
+     * interruption stops the wait for the signal.
+     *
+     * @param executor runs the transaction
+     * @return completes with the result of the transaction
+     */
+    public Future<Result> start(Executor executor) {
+        FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+            @Override
+            public Result call() {
+                return run();
+            }
+        });
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Run the transaction on the calling thread
+     *
+     * @return the result of the transaction
+     */
+    public Result run() {
+        Result result = new Result();
+        OnboardingDeadline deadline = new OnboardingDeadline(timeout);
+        final BlockingQueue<ConnectionResult> signals = new ArrayBlockingQueue<ConnectionResult>(1);
+        ConnectionResultListener listener = new ConnectionResultListener() {
+            @Override
+            public void onConnectionResult(ConnectionResult connectionResult) {
+                signals.offer(connectionResult);
+            }
+        };
+
+        result.phaseStarted(Phase.CONFIGURE);
+        try {
+            client.registerConnectionResultListener(listener);
+        } catch (BusException e) {
+            result.failed(Phase.CONFIGURE, e);
+            return end(result);
+        }
+        try {
+            try {
+                result.mode = client.configureWiFi(ssid, passphrase, authType, deadline);
+                result.phaseEnded(Phase.CONFIGURE);
+            } catch (BusException e) {
+                result.failed(Phase.CONFIGURE, e);
+                return end(result);
+            }
+
+            if (result.mode == ConfigureWifiMode.FAST_CHANNNEL) {
+                result.phaseStarted(Phase.WAIT_FOR_SIGNAL);
+                try {
+                    result.connectionResult = waitForSignal(signals, deadline);
+                    checkValidated(result.connectionResult);
+                    result.phaseEnded(Phase.WAIT_FOR_SIGNAL);
+                } catch (BusException e) {
+                    result.failed(Phase.WAIT_FOR_SIGNAL, e);
+                    return end(result);
+                } catch (InterruptedException e) {
+                    result.failed(Phase.WAIT_FOR_SIGNAL, e);
+                    Thread.currentThread().interrupt();
+                    return end(result);
+                }
+            }
+        } finally {
+            client.unRegisterConnectionResultListener(listener);
+        }
+
+        result.phaseStarted(Phase.CONNECT);
+        try {
+            client.connectWiFi(deadline);
+            result.phaseEnded(Phase.CONNECT);
+        } catch (BusException e) {
+            result.failed(Phase.CONNECT, e);
+        }
+        return end(result);
+    }
+
+    /**
+     * @param signals receives the ConnectionResult signal data
+     * @param deadline the overall deadline
+     * @return the signal data
+     * @throws BusException if the signal didn't arrive in time
+     * @throws InterruptedException if the transaction was cancelled
+     */
+    private ConnectionResult waitForSignal(BlockingQueue<ConnectionResult> signals, OnboardingDeadline deadline) throws BusException, InterruptedException {
+        long wait = Math.min(signalTimeout, deadline.getRemainingTime());
+        ConnectionResult connectionResult = signals.poll(wait, TimeUnit.MILLISECONDS);
+        if (connectionResult == null) {
+            if (deadline.isExpired()) {
+                throw new OnboardingDeadlineExceededException("ConnectionResult signal has not arrived before the deadline");
+            }
+            throw new BusException("ConnectionResult signal has not arrived within " + wait + " msec");
+        }
+        return connectionResult;
+    }
+
+    /**
+     * @param connectionResult the signal data
+     * @throws BusException if the onboardee didn't validate the personal AP
+     */
+    private static void checkValidated(ConnectionResult connectionResult) throws BusException {
+        if (connectionResult.getConnectionResponseType() != ConnectionResponseType.VALIDATED) {
+            throw new BusException("ConnectionResult has failed, ConnectionResponseType: '" + connectionResult.getConnectionResponseType() + "' message: '"
+                    + connectionResult.getMessage() + "'");
+        }
+    }
+
+    private Result end(Result result) {
+        result.endNanos = System.nanoTime();
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.onboarding.transport.ScanInfo;
+
+/**
+ * Caches the {@link ScanInfo} of the onboardees by AppId, so that repeated
+ * scan requests don't all go over the soft AP link. The age of a cached scan
+ * is the age reported by the onboardee in {@link ScanInfo#getAge()} plus the
+ * time elapsed since it was received. A cached scan is served as long as its
+ * age is within the staleness bound. Concurrent requests for the same
+ * onboardee that miss the cache share a single GetScanInfo call.
+ * <p>
+ * The ScanInfo objects are shared by the callers and must not be modified.
+ */
+public class ScanInfoCache {
+
+    /**
+     * Default staleness bound {@value #DEFAULT_MAX_STALENESS} msec
+     */
+    public static final long DEFAULT_MAX_STALENESS = 2 * 60 * 1000;
+
+    /**
+     * Length of the unit of {@link ScanInfo#getAge()} in msec
+     */
+    private static final long AGE_UNIT = 60 * 1000;
+
+    /**
+     * Maximal age of a served scan in msec
+     */
+    private final long maxStaleness;
+
+    /**
+     * The cached scans by AppId
+     */
+    private final ConcurrentHashMap<String, CachedScanInfo> entries = new ConcurrentHashMap<String, CachedScanInfo>();
+
+    /**
+     * The ongoing GetScanInfo calls by AppId
+     */
+    private final ConcurrentHashMap<String, FutureTask<ScanInfo>> inFlight = new ConcurrentHashMap<String, FutureTask<ScanInfo>>();
+
+    /**
+     * A received scan with the local time it was received at
+     */
+    private static class CachedScanInfo {
+        private final ScanInfo scanInfo;
+        private final long receivedAtNanos;
+
+        private CachedScanInfo(ScanInfo scanInfo, long receivedAtNanos) {
+            this.scanInfo = scanInfo;
+            this.receivedAtNanos = receivedAtNanos;
+        }
+
+        /**
+         * @return the age of the scan in msec: as reported by the onboardee plus the time since it was received
+         */
+        private long getAge() {
+            return Math.max(scanInfo.getAge(), 0) * AGE_UNIT + (System.nanoTime() - receivedAtNanos) / 1000000L;
+        }
+    }
+
+    /**
+     * Constructor with a staleness bound of {@value #DEFAULT_MAX_STALENESS} msec
+     */
+    public ScanInfoCache() {
+        this(DEFAULT_MAX_STALENESS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxStaleness maximal age of a served scan in msec. Scans are
+     *            reported in minutes, so a bound under a minute only serves
+     *            scans reported with age 0.
+     */
+    public ScanInfoCache(long maxStaleness) {
+        if (maxStaleness < 0) {
+            throw new IllegalArgumentException("maxStaleness must not be negative");
+        }
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Get the scan of an onboardee, from the cache if fresh enough, otherwise
+     * by calling {@link OnboardingClient#getScanInfo()}. If a call for the
+     * same onboardee is already ongoing its result is awaited instead.
+     *
+     * @param appId the AppId of the onboardee
+     * @param client a client of the onboardee
+     * @return the scan of the onboardee
+     * @throws BusException if the GetScanInfo call fails
+     */
+    public ScanInfo getScanInfo(String appId, final OnboardingClient client) throws BusException {
+        if (appId == null || client == null) {
+            throw new IllegalArgumentException("appId and client must not be null");
+        }
+        CachedScanInfo cached = entries.get(appId);
+        if (cached != null && cached.getAge() <= maxStaleness) {
+            return cached.scanInfo;
+        }
+
+        FutureTask<ScanInfo> call = new FutureTask<ScanInfo>(new Callable<ScanInfo>() {
+            @Override
+            public ScanInfo call() throws BusException {
+                return client.getScanInfo();
+            }
+        });
+        FutureTask<ScanInfo> ongoingCall = inFlight.putIfAbsent(appId, call);
+        if (ongoingCall == null) {
+            try {
+                call.run();
+                ScanInfo scanInfo = call.get();
+                if (scanInfo != null) {
+                    entries.put(appId, new CachedScanInfo(scanInfo, System.nanoTime()));
+                }
+            } catch (Exception e) {
+                // reported below, by waitFor
+            } finally {
+                inFlight.remove(appId, call);
+            }
+            ongoingCall = call;
+        }
+        return waitFor(ongoingCall);
+    }
+
+    /**
+     * Drop the cached scan of an onboardee, for example after it was asked to rescan
+     *
+     * @param appId the AppId of the onboardee
+     */
+    public void invalidate(String appId) {
+        if (appId != null) {
+            entries.remove(appId);
+        }
+    }
+
+    /**
+     * Drop all the cached scans
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @param call a GetScanInfo call
+     * @return the result of the call
+     * @throws BusException the failure of the call
+     */
+    private static ScanInfo waitFor(FutureTask<ScanInfo> call) throws BusException {
+        boolean isInterrupted = false;
+        try {
+            while (true) {
+                try {
+                    return call.get();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BusException) {
+                throw (BusException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new BusException("getScanInfo has failed", cause);
+        } finally {
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
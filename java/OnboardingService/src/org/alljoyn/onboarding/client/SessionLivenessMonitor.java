@@ -0,0 +1,278 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.client;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.Mutable;
+import org.alljoyn.bus.Status;
+import org.alljoyn.services.common.ClientBase;
+
+/**
+ * Detects the loss of the session of a connected {@link ClientBase}, for
+ * example when the onboarder drops off the soft AP of the onboardee, without
+ * waiting for the next method call to time out. The session is given a link
+ * timeout, so the routing node tears it down when the link goes silent, and the
+ * peer is pinged periodically. The session is reported lost once
+ * {@link #getMaxMissedProbes()} probes in a row are unanswered, or when
+ * {@link #connectionLost()} is called, whichever happens first. The loss is
+ * reported once, on the probing thread or on the thread that called
+ * {@link #connectionLost()}.
+ */
+public class SessionLivenessMonitor {
+
+    /**
+     * Default link timeout requested for the session {@value #DEFAULT_LINK_TIMEOUT} sec
+     */
+    public static final int DEFAULT_LINK_TIMEOUT = 10;
+
+    /**
+     * Default time between two probes {@value #DEFAULT_PROBE_INTERVAL} msec
+     */
+    public static final int DEFAULT_PROBE_INTERVAL = 2000;
+
+    /**
+     * Default time to wait for the reply of a probe {@value #DEFAULT_PROBE_TIMEOUT} msec
+     */
+    public static final int DEFAULT_PROBE_TIMEOUT = 1500;
+
+    /**
+     * Default number of unanswered probes in a row after which the session is
+     * considered lost {@value #DEFAULT_MAX_MISSED_PROBES}
+     */
+    public static final int DEFAULT_MAX_MISSED_PROBES = 2;
+
+    /**
+     * Receives the loss of the monitored session
+     */
+    public static interface SessionLostListener {
+
+        /**
+         * Called once when the monitored session is lost
+         *
+         * @param client the client whose session was lost
+         * @param reason a short description of how the loss was detected
+         */
+        public void onSessionLost(ClientBase client, String reason);
+    }
+
+    private final BusAttachment bus;
+    private final ClientBase client;
+    private final int linkTimeout;
+    private final int probeInterval;
+    private final int probeTimeout;
+    private final int maxMissedProbes;
+    private final SessionLostListener listener;
+
+    /**
+     * Runs the probes. Null when the monitor isn't started.
+     */
+    private Timer probeTimer = null;
+
+    /**
+     * The link timeout granted by the routing node, 0 if none
+     */
+    private int grantedLinkTimeout = 0;
+
+    /**
+     * Number of unanswered probes in a row
+     */
+    private int missedProbes = 0;
+
+    /**
+     * Whether the loss was already reported
+     */
+    private boolean isSessionLost = false;
+
+    /**
+     * Constructor using the default link timeout and probing parameters
+     *
+     * @param bus the BusAttachment of the client
+     * @param client a connected client
+     * @param listener receives the loss of the session
+     */
+    public SessionLivenessMonitor(BusAttachment bus, ClientBase client, SessionLostListener listener) {
+        this(bus, client, DEFAULT_LINK_TIMEOUT, DEFAULT_PROBE_INTERVAL, DEFAULT_PROBE_TIMEOUT, DEFAULT_MAX_MISSED_PROBES, listener);
+    }
+
+    /**
+     * Constructor. The session is reported lost at most
+     * maxMissedProbes * probeInterval + probeTimeout msec after the peer stops
+     * answering.
+     *
+     * @param bus the BusAttachment of the client
+     * @param client a connected client
+     * @param linkTimeout link timeout requested for the session in sec, 0 to leave the session's link timeout unchanged
+     * @param probeInterval time between two probes in msec
+     * @param probeTimeout time to wait for the reply of a probe in msec, less than probeInterval
+     * @param maxMissedProbes number of unanswered probes in a row after which the session is considered lost
+     * @param listener receives the loss of the session
+     */
+    public SessionLivenessMonitor(BusAttachment bus, ClientBase client, int linkTimeout, int probeInterval, int probeTimeout, int maxMissedProbes, SessionLostListener listener) {
+        if (bus == null || client == null || listener == null) {
+            throw new IllegalArgumentException("bus, client and listener must not be null");
+        }
+        if (linkTimeout < 0 || probeInterval <= 0 || probeTimeout <= 0 || probeTimeout >= probeInterval || maxMissedProbes <= 0) {
+            throw new IllegalArgumentException("invalid link timeout or probing parameters");
+        }
+        this.bus = bus;
+        this.client = client;
+        this.linkTimeout = linkTimeout;
+        this.probeInterval = probeInterval;
+        this.probeTimeout = probeTimeout;
+        this.maxMissedProbes = maxMissedProbes;
+        this.listener = listener;
+    }
+
+    /**
+     * Set the link timeout of the session and start probing the peer. Does
+     * nothing if the monitor is already started or the client isn't connected.
+     * Probing goes on even if the routing node doesn't support link timeouts.
+     */
+    public synchronized void start() {
+        if (probeTimer != null || !client.isConnected()) {
+            return;
+        }
+        missedProbes = 0;
+        isSessionLost = false;
+
+        grantedLinkTimeout = 0;
+        if (linkTimeout > 0) {
+            Mutable.IntegerValue linkTimeoutValue = new Mutable.IntegerValue(linkTimeout);
+            if (bus.setLinkTimeout(client.getSessionId(), linkTimeoutValue) == Status.OK) {
+                grantedLinkTimeout = linkTimeoutValue.value;
+            }
+        }
+
+        probeTimer = new Timer("SessionLivenessMonitor", true);
+        probeTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                probe();
+            }
+        }, probeInterval, probeInterval);
+    }
+
+    /**
+     * Stop probing. To be called before an expected loss of the session, for
+     * example before telling the onboardee to connect to the personal AP.
+     */
+    public synchronized void stop() {
+        if (probeTimer != null) {
+            probeTimer.cancel();
+            probeTimer = null;
+        }
+    }
+
+    /**
+     * Report the loss of the session right away. To be called from the
+     * {@link org.alljoyn.services.common.ServiceAvailabilityListener} of the
+     * client. Ignored if the monitor isn't started.
+     */
+    public void connectionLost() {
+        reportSessionLost("session lost");
+    }
+
+    /**
+     * @return true if the loss of the session was reported
+     */
+    public synchronized boolean isSessionLost() {
+        return isSessionLost;
+    }
+
+    /**
+     * @return the link timeout in sec granted by the routing node, 0 if none
+     */
+    public synchronized int getGrantedLinkTimeout() {
+        return grantedLinkTimeout;
+    }
+
+    /**
+     * @return number of unanswered probes in a row after which the session is considered lost
+     */
+    public int getMaxMissedProbes() {
+        return maxMissedProbes;
+    }
+
+    /**
+     * @return the longest time in msec between the peer going silent and the loss being reported
+     */
+    public int getDetectionWindow() {
+        return maxMissedProbes * probeInterval + probeTimeout;
+    }
+
+    /**
+     * Ping the peer once, on the probing thread
+     */
+    private void probe() {
+        synchronized (this) {
+            if (probeTimer == null) {
+                return;
+            }
+        }
+        if (!client.isConnected()) {
+            reportSessionLost("client disconnected");
+            return;
+        }
+
+        Status status = bus.ping(client.getPeerName(), probeTimeout);
+        switch (status) {
+        case OK:
+            synchronized (this) {
+                missedProbes = 0;
+            }
+            break;
+        case ALLJOYN_PING_REPLY_INCOMPATIBLE_REMOTE_ROUTING_NODE:
+            // the peer can't be pinged, rely on the link timeout alone
+            stop();
+            break;
+        case ALLJOYN_PING_REPLY_UNKNOWN_NAME:
+        case ALLJOYN_PING_REPLY_UNREACHABLE:
+            reportSessionLost("ping " + status);
+            break;
+        default:
+            boolean isLost;
+            synchronized (this) {
+                isLost = ++missedProbes >= maxMissedProbes;
+            }
+            if (isLost) {
+                reportSessionLost(maxMissedProbes + " probes unanswered, last ping " + status);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Stop probing and call the listener, once
+     *
+     * @param reason a short description of how the loss was detected
+     */
+    private void reportSessionLost(String reason) {
+        synchronized (this) {
+            if (probeTimer == null || isSessionLost) {
+                return;
+            }
+            isSessionLost = true;
+            probeTimer.cancel();
+            probeTimer = null;
+        }
+        listener.onSessionLost(client, reason);
+    }
+}
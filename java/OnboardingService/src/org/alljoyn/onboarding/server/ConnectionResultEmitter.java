@@ -0,0 +1,83 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.BusObject;
+import org.alljoyn.bus.MessageContext;
+import org.alljoyn.bus.SignalEmitter;
+import org.alljoyn.bus.SignalEmitter.GlobalBroadcast;
+import org.alljoyn.onboarding.transport.ConnectionResultAJ;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport;
+
+/**
+ * Sends the ConnectionResult signal of an {@link OnboardingServer} to the
+ * onboarder, on the session of its ConfigureWiFi call
+ */
+public class ConnectionResultEmitter {
+
+    private final BusAttachment bus;
+
+    /**
+     * The bus object registered at {@link OnboardingTransport#OBJ_PATH}
+     */
+    private final BusObject source;
+
+    /**
+     * Constructor
+     *
+     * @param bus the bus the source is registered on
+     * @param source the bus object registered at {@link OnboardingTransport#OBJ_PATH},
+     *            the server itself or the dispatcher of an {@link OnboardingGateway}
+     */
+    public ConnectionResultEmitter(BusAttachment bus, BusObject source) {
+        if (bus == null || source == null) {
+            throw new IllegalArgumentException("bus and source must not be null");
+        }
+        this.bus = bus;
+        this.source = source;
+    }
+
+    /**
+     * Must be called on the bus thread of a method call
+     *
+     * @return the session of the method call being handled, 0 if none
+     */
+    public int getCallSessionId() {
+        MessageContext messageContext = bus.getMessageContext();
+        return messageContext != null ? messageContext.sessionId : 0;
+    }
+
+    /**
+     * Send the ConnectionResult signal
+     *
+     * @param sessionId the session of the onboarder
+     * @param result the result of the validation
+     * @throws BusException if the signal can't be sent, for example because
+     *             the session was lost
+     */
+    public void emit(int sessionId, OBLastError result) throws BusException {
+        ConnectionResultAJ connectionResultAJ = new ConnectionResultAJ();
+        connectionResultAJ.code = result.getErrorCode();
+        connectionResultAJ.message = result.getErrorMessage();
+        SignalEmitter emitter = new SignalEmitter(source, sessionId, GlobalBroadcast.Off);
+        emitter.getInterface(OnboardingTransport.class).ConnectionResult(connectionResultAJ);
+    }
+}
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+
+/**
+ * The Wi-Fi operations of an onboardee whose radio can keep the soft AP up
+ * while it connects as a station to the personal AP. The
+ * {@link OnboardingServer} of such a device answers ConfigureWiFi with the
+ * fast channel mode, validates the configuration in the background and
+ * sends the result to the onboarder with the ConnectionResult signal, over
+ * the soft AP session that is still up.
+ */
+public interface FastChannelWifiBackend extends WifiBackend {
+
+    /**
+     * Check that the device can connect to the personal AP, keeping the
+     * soft AP up. Called after ConfigureWiFi is received. The device
+     * switches to the personal AP only once Connect is received.
+     *
+     * @param ssid the personal AP SSID
+     * @param passphrase the personal AP passphrase, as sent by the onboarder
+     * @param authType the authentication type of the personal AP,
+     *            {@link AuthType#ANY} if neither the onboarder nor the last
+     *            scan knew it
+     * @throws WifiBackendException if the device failed to connect
+     */
+    public void validate(String ssid, String passphrase, AuthType authType) throws WifiBackendException;
+}
@@ -0,0 +1,304 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.alljoyn.bus.BusAttachment;
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
+import org.alljoyn.bus.MessageContext;
+import org.alljoyn.bus.Mutable;
+import org.alljoyn.bus.SessionListener;
+import org.alljoyn.bus.SessionOpts;
+import org.alljoyn.bus.SessionPortListener;
+import org.alljoyn.bus.Status;
+import org.alljoyn.onboarding.transport.ConnectionResultAJ;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport;
+import org.alljoyn.onboarding.transport.ScanInfo;
+
+/**
+ * Hosts many virtual onboardees on one {@link BusAttachment}, for gateways
+ * that bridge devices that don't run AllJoyn. Each device binds its own
+ * session port and has its own {@link OnboardingServer}, with its own state,
+ * last error and {@link WifiBackend}. A single bus object is registered at
+ * {@link OnboardingTransport#OBJ_PATH}; it dispatches every call to the
+ * device whose port the caller's session was joined on, so onboarders use
+ * the standard object path. The devices share one {@link ScanCache}, since
+ * they share the radio of the gateway, and one worker pool, on which the
+ * commands of each device stay ordered.
+ * <p>
+ * The application announces each device, with its session port, through
+ * the About service.
+ */
+public class OnboardingGateway {
+
+    private final BusAttachment bus;
+
+    /**
+     * The worker pool shared by the devices
+     */
+    private final Executor pool;
+
+    /**
+     * The scans shared by the devices
+     */
+    private final ScanCache scanCache;
+
+    /**
+     * The device of each session port
+     */
+    private final Map<Short, OnboardingServer> devicesByPort = new ConcurrentHashMap<Short, OnboardingServer>();
+
+    /**
+     * The device of each joined session. Read without locking on every call.
+     */
+    private final Map<Integer, OnboardingServer> devicesBySession = new ConcurrentHashMap<Integer, OnboardingServer>();
+
+    /**
+     * Receives all the calls and dispatches them by session
+     */
+    private final Dispatcher dispatcher = new Dispatcher();
+
+    /**
+     * Sends the ConnectionResult signals of the devices from the dispatcher
+     */
+    private final ConnectionResultEmitter connectionResultEmitter;
+
+    private boolean isStarted = false;
+
+    /**
+     * Accepts the sessions of the bound ports and binds them to their device
+     */
+    private final SessionPortListener sessionPortListener = new SessionPortListener() {
+        @Override
+        public boolean acceptSessionJoiner(short sessionPort, String joiner, SessionOpts opts) {
+            return devicesByPort.containsKey(sessionPort);
+        }
+
+        @Override
+        public void sessionJoined(short sessionPort, int id, String joiner) {
+            OnboardingServer device = devicesByPort.get(sessionPort);
+            if (device != null) {
+                devicesBySession.put(id, device);
+                bus.setSessionListener(id, sessionListener);
+            }
+        }
+    };
+
+    /**
+     * Forgets the sessions that are lost
+     */
+    private final SessionListener sessionListener = new SessionListener() {
+        @Override
+        public void sessionLost(int sessionId, int reason) {
+            devicesBySession.remove(sessionId);
+        }
+    };
+
+    /**
+     * Dispatches the org.alljoyn.Onboarding calls to the device of the session
+     */
+    private class Dispatcher implements OnboardingTransport {
+
+        /**
+         * @return the device of the session of the current call
+         * @throws BusException if the call isn't made on the session of a device
+         */
+        private OnboardingServer getDevice() throws BusException {
+            MessageContext messageContext = bus.getMessageContext();
+            OnboardingServer device = messageContext != null ? devicesBySession.get(messageContext.sessionId) : null;
+            if (device == null) {
+                throw new ErrorReplyBusException(Status.BUS_NO_SESSION);
+            }
+            return device;
+        }
+
+        @Override
+        public short getVersion() throws BusException {
+            return OnboardingServer.INTERFACE_VERSION;
+        }
+
+        @Override
+        public short getState() throws BusException {
+            return getDevice().getState();
+        }
+
+        @Override
+        public OBLastError getLastError() throws BusException {
+            return getDevice().getLastError();
+        }
+
+        @Override
+        public void Connect() throws BusException {
+            getDevice().Connect();
+        }
+
+        @Override
+        public short ConfigureWiFi(String ssid, String passphrase, short authType) throws BusException {
+            return getDevice().ConfigureWiFi(ssid, passphrase, authType);
+        }
+
+        @Override
+        public void Offboard() throws BusException {
+            getDevice().Offboard();
+        }
+
+        @Override
+        public ScanInfo GetScanInfo() throws BusException {
+            return getDevice().GetScanInfo();
+        }
+
+        @Override
+        public void ConnectionResult(ConnectionResultAJ connectionResultAJ) {
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bus the bus the devices are hosted on
+     * @param pool the worker pool shared by the devices, runs the Wi-Fi operations
+     * @param scanCache the scans shared by the devices
+     */
+    public OnboardingGateway(BusAttachment bus, Executor pool, ScanCache scanCache) {
+        if (bus == null || pool == null || scanCache == null) {
+            throw new IllegalArgumentException("bus, pool and scanCache must not be null");
+        }
+        this.bus = bus;
+        this.pool = pool;
+        this.scanCache = scanCache;
+        this.connectionResultEmitter = new ConnectionResultEmitter(bus, dispatcher);
+    }
+
+    /**
+     * Register the dispatcher bus object and start a first scan
+     *
+     * @throws BusException if the registration fails
+     */
+    public synchronized void start() throws BusException {
+        if (isStarted) {
+            return;
+        }
+        Status status = bus.registerBusObject(dispatcher, OnboardingTransport.OBJ_PATH);
+        if (status != Status.OK) {
+            throw new BusException("registerBusObject " + OnboardingTransport.OBJ_PATH + " has failed, Status: '" + status + "'");
+        }
+        isStarted = true;
+        scanCache.refresh();
+    }
+
+    /**
+     * Unbind the ports of all the devices and unregister the dispatcher.
+     * The shared pool is left to its owner.
+     */
+    public synchronized void stop() {
+        if (!isStarted) {
+            return;
+        }
+        for (Short port : devicesByPort.keySet()) {
+            removeDevice(port);
+        }
+        bus.unregisterBusObject(dispatcher);
+        isStarted = false;
+    }
+
+    /**
+     * Add a device on its own session port. Its onboarding is not kept across
+     * restarts.
+     *
+     * @param sessionPort the session port the device is announced with
+     * @param backend does the Wi-Fi operations of the device, other than scanning
+     * @return the onboardee of the device
+     * @throws BusException if the port is already used or can't be bound
+     */
+    public OnboardingServer addDevice(short sessionPort, WifiBackend backend) throws BusException {
+        return addDevice(sessionPort, backend, null);
+    }
+
+    /**
+     * Add a device on its own session port. The stored onboarding of the
+     * device is restored before its port is bound, so that no call sees the
+     * device unconfigured before it is restored.
+     *
+     * @param sessionPort the session port the device is announced with
+     * @param backend does the Wi-Fi operations of the device, other than scanning
+     * @param store keeps the onboarding of the device across restarts, null not to keep it
+     * @return the onboardee of the device
+     * @throws BusException if the port is already used or can't be bound
+     */
+    public synchronized OnboardingServer addDevice(short sessionPort, WifiBackend backend, OnboardingStore store) throws BusException {
+        if (devicesByPort.containsKey(sessionPort)) {
+            throw new BusException("session port " + sessionPort + " is already used by a device");
+        }
+        OnboardingServer device = new OnboardingServer(backend, new SerialExecutor(pool), scanCache);
+        device.setConnectionResultEmitter(connectionResultEmitter);
+        device.setStore(store);
+        device.start();
+        SessionOpts sessionOpts = new SessionOpts();
+        sessionOpts.traffic = SessionOpts.TRAFFIC_MESSAGES;
+        sessionOpts.isMultipoint = false;
+        sessionOpts.proximity = SessionOpts.PROXIMITY_ANY;
+        sessionOpts.transports = SessionOpts.TRANSPORT_ANY;
+        // registered first, a joiner may be accepted as soon as the port is bound
+        devicesByPort.put(sessionPort, device);
+        Status status = bus.bindSessionPort(new Mutable.ShortValue(sessionPort), sessionOpts, sessionPortListener);
+        if (status != Status.OK) {
+            devicesByPort.remove(sessionPort);
+            throw new BusException("bindSessionPort " + sessionPort + " has failed, Status: '" + status + "'");
+        }
+        return device;
+    }
+
+    /**
+     * Remove a device: unbind its port and leave its sessions
+     *
+     * @param sessionPort the session port of the device
+     */
+    public synchronized void removeDevice(short sessionPort) {
+        OnboardingServer device = devicesByPort.remove(sessionPort);
+        if (device == null) {
+            return;
+        }
+        bus.unbindSessionPort(sessionPort);
+        for (Map.Entry<Integer, OnboardingServer> entry : devicesBySession.entrySet()) {
+            if (entry.getValue() == device) {
+                devicesBySession.remove(entry.getKey());
+                bus.leaveSession(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param sessionPort the session port of a device
+     * @return the onboardee of the device, null if none
+     */
+    public OnboardingServer getDevice(short sessionPort) {
+        return devicesByPort.get(sessionPort);
+    }
+
+    /**
+     * @return number of hosted devices
+     */
+    public int getDeviceCount() {
+        return devicesByPort.size();
+    }
+}
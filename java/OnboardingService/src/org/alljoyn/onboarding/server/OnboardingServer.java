@@ -0,0 +1,540 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alljoyn.bus.BusException;
+import org.alljoyn.bus.ErrorReplyBusException;
+import org.alljoyn.onboarding.OnboardingService;
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.OnboardingService.OnboardingState;
+import org.alljoyn.onboarding.transport.ConnectionResult.ConnectionResponseType;
+import org.alljoyn.onboarding.transport.ConnectionResultAJ;
+import org.alljoyn.onboarding.transport.OBLastError;
+import org.alljoyn.onboarding.transport.OnboardingTransport;
+import org.alljoyn.onboarding.transport.ScanInfo;
+
+/**
+ * The onboardee side of the org.alljoyn.Onboarding interface, to be
+ * registered at {@link OnboardingTransport#OBJ_PATH}. The Wi-Fi operations
+ * are delegated to a {@link WifiBackend}.
+ * <p>
+ * The method handlers never wait for the Wi-Fi: ConfigureWiFi only validates
+ * and stores the personal AP configuration, Connect and Offboard are queued
+ * on a command executor, and GetScanInfo answers from a {@link ScanCache}
+ * that scans in the background. The properties are read from volatile
+ * fields. So a slow backend doesn't hold the AllJoyn bus threads.
+ * <p>
+ * With a {@link FastChannelWifiBackend} and a {@link ConnectionResultEmitter},
+ * ConfigureWiFi is answered with the fast channel mode: the configuration is
+ * validated on the command executor while the soft AP stays up, and the
+ * result is sent to the onboarder with the ConnectionResult signal, so a
+ * wrong configuration doesn't cost the onboarder a soft AP reconnection.
+ * <p>
+ * With an {@link OnboardingStore} the configuration, state and last error
+ * are restored by {@link #start()} and saved on the command executor after
+ * every change. The saves that failed are counted, see
+ * {@link #getSaveFailureCount()}.
+ */
+public class OnboardingServer implements OnboardingTransport {
+
+    /**
+     * The version of the org.alljoyn.Onboarding interface
+     */
+    public static final short INTERFACE_VERSION = OnboardingService.PROTOCOL_VERSION;
+
+    /**
+     * The AllJoyn error name of an invalid argument
+     */
+    public static final String ERROR_OUT_OF_RANGE = "org.alljoyn.Error.OutOfRange";
+
+    /**
+     * The AllJoyn error name of an unsupported optional method
+     */
+    public static final String ERROR_FEATURE_NOT_AVAILABLE = "org.alljoyn.Error.FeatureNotAvailable";
+
+    /**
+     * Maximal length of an SSID in bytes
+     */
+    private static final int MAX_SSID_LENGTH = 32;
+
+    /**
+     * A personal AP configuration received by ConfigureWiFi
+     */
+    private static class PersonalApConfiguration {
+        private final String ssid;
+        private final String passphrase;
+        private final AuthType authType;
+
+        private PersonalApConfiguration(String ssid, String passphrase, AuthType authType) {
+            this.ssid = ssid;
+            this.passphrase = passphrase;
+            this.authType = authType;
+        }
+    }
+
+    private final WifiBackend backend;
+
+    /**
+     * Runs Connect and Offboard, in the order they were received
+     */
+    private final Executor commandExecutor;
+
+    /**
+     * The scans of the radio of the device
+     */
+    private final ScanCache scanCache;
+
+    /**
+     * Guards the updates of the configuration, state and last error, which
+     * change together
+     */
+    private final Object stateLock = new Object();
+
+    /**
+     * The onboarding state id
+     */
+    private volatile short state = OnboardingState.PERSONAL_AP_NOT_CONFIGURED.getStateId();
+
+    /**
+     * The last error code and message, replaced as a whole
+     */
+    private volatile OBLastError lastError = newLastError(ConnectionResponseType.VALIDATED, "");
+
+    /**
+     * The personal AP configuration, null if not configured
+     */
+    private volatile PersonalApConfiguration configuration = null;
+
+    /**
+     * Sends the ConnectionResult signal, null if not set
+     */
+    private volatile ConnectionResultEmitter connectionResultEmitter = null;
+
+    /**
+     * Keeps the onboarding across restarts, null if not set
+     */
+    private volatile OnboardingStore store = null;
+
+    /**
+     * Number of saves to the store that failed
+     */
+    private final AtomicInteger saveFailureCount = new AtomicInteger();
+
+    /**
+     * Saves the onboarding to the store
+     */
+    private final Runnable saveTask = new Runnable() {
+        @Override
+        public void run() {
+            save();
+        }
+    };
+
+    /**
+     * Constructor, with a scan cache of its own that scans with the backend
+     * every {@value ScanCache#DEFAULT_REFRESH_INTERVAL} msec at most
+     *
+     * @param backend does the Wi-Fi operations
+     * @param commandExecutor runs Connect and Offboard. Must run the tasks one at a time, in order.
+     * @param scanExecutor runs the scans
+     */
+    public OnboardingServer(WifiBackend backend, Executor commandExecutor, Executor scanExecutor) {
+        this(backend, commandExecutor, new ScanCache(backend, scanExecutor, ScanCache.DEFAULT_REFRESH_INTERVAL));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param backend does the Wi-Fi operations other than scanning
+     * @param commandExecutor runs Connect and Offboard. Must run the tasks one at a time, in order.
+     * @param scanCache the scans of the radio of the device, may be shared
+     */
+    public OnboardingServer(WifiBackend backend, Executor commandExecutor, ScanCache scanCache) {
+        if (backend == null || commandExecutor == null || scanCache == null) {
+            throw new IllegalArgumentException("backend, commandExecutor and scanCache must not be null");
+        }
+        this.backend = backend;
+        this.commandExecutor = commandExecutor;
+        this.scanCache = scanCache;
+    }
+
+    /**
+     * Keep the onboarding across restarts. Must be called before {@link #start()}.
+     *
+     * @param store the store of the onboarding, null not to keep it
+     */
+    public void setStore(OnboardingStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return number of saves to the store that failed. While a save fails,
+     *         the stored onboarding is the one of the last successful save.
+     */
+    public int getSaveFailureCount() {
+        return saveFailureCount.get();
+    }
+
+    /**
+     * Restore the stored onboarding if any, and start a first scan, so that
+     * the first GetScanInfo has results to answer with. Must be called
+     * before the server is registered on the bus, so that no call sees the
+     * device unconfigured before it is restored.
+     */
+    public void start() {
+        OnboardingStore current = store;
+        if (current != null) {
+            restore(current.load());
+        }
+        scanCache.refresh();
+    }
+
+    /**
+     * @param record the stored onboarding, null if none
+     */
+    private void restore(OnboardingStore.Record record) {
+        if (record == null || record.getSsid() == null) {
+            return;
+        }
+        AuthType type = AuthType.getAuthTypeById(record.getAuthType());
+        short restoredState = record.getState();
+        if (restoredState == OnboardingState.PERSONAL_AP_CONFIGURED_VALIDATING.getStateId()
+                || restoredState == OnboardingState.PERSONAL_AP_NOT_CONFIGURED.getStateId()) {
+            // the validation was interrupted by the restart
+            restoredState = OnboardingState.PERSONAL_AP_CONFIGURED_NOT_VALIDATED.getStateId();
+        }
+        synchronized (stateLock) {
+            configuration = new PersonalApConfiguration(record.getSsid(), record.getPassphrase() != null ? record.getPassphrase() : "", type);
+            lastError = newLastError(record.getLastErrorCode(), record.getLastErrorMessage());
+            state = restoredState;
+        }
+    }
+
+    /**
+     * Save the onboarding to the store, if any. Called on the command executor.
+     */
+    private void save() {
+        OnboardingStore current = store;
+        if (current == null) {
+            return;
+        }
+        OnboardingStore.Record record;
+        synchronized (stateLock) {
+            PersonalApConfiguration currentConfiguration = configuration;
+            OBLastError currentLastError = lastError;
+            if (currentConfiguration == null) {
+                record = new OnboardingStore.Record(OnboardingState.PERSONAL_AP_NOT_CONFIGURED.getStateId(), null, null, AuthType.ANY.getTypeId(),
+                        currentLastError.getErrorCode(), currentLastError.getErrorMessage());
+            } else {
+                record = new OnboardingStore.Record(state, currentConfiguration.ssid, currentConfiguration.passphrase, currentConfiguration.authType.getTypeId(),
+                        currentLastError.getErrorCode(), currentLastError.getErrorMessage());
+            }
+        }
+        try {
+            current.save(record);
+        } catch (IOException e) {
+            // the store keeps the previous record until a later save succeeds, which may never come
+            saveFailureCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Enable the fast channel mode, if the backend is a {@link FastChannelWifiBackend}
+     *
+     * @param emitter sends the ConnectionResult signal, null to disable the fast channel mode
+     */
+    public void setConnectionResultEmitter(ConnectionResultEmitter emitter) {
+        connectionResultEmitter = emitter;
+    }
+
+    /**
+     * @return the onboarding state
+     */
+    public OnboardingState getOnboardingState() {
+        return OnboardingState.getStateById(state);
+    }
+
+    @Override
+    public short getVersion() throws BusException {
+        return INTERFACE_VERSION;
+    }
+
+    @Override
+    public short getState() throws BusException {
+        return state;
+    }
+
+    @Override
+    public OBLastError getLastError() throws BusException {
+        OBLastError current = lastError;
+        return newLastError(current.getErrorCode(), current.getErrorMessage());
+    }
+
+    /**
+     * Store the personal AP configuration. The device connects to the
+     * personal AP once Connect is received. An {@link AuthType#ANY}
+     * authentication type is resolved from the last scan when possible. In
+     * the fast channel mode the configuration is validated in the
+     * background, and the result is signaled on the session of the call.
+     */
+    @Override
+    public short ConfigureWiFi(String ssid, String passphrase, short authType) throws BusException {
+        AuthType type = AuthType.getAuthTypeById(authType);
+        if (type == null) {
+            throw new ErrorReplyBusException(ERROR_OUT_OF_RANGE, "Unknown authType " + authType);
+        }
+        if (!isValidSsid(ssid)) {
+            throw new ErrorReplyBusException(ERROR_OUT_OF_RANGE, "Invalid SSID");
+        }
+        if (type == AuthType.ANY) {
+            type = scanCache.getAuthType(ssid);
+        }
+        PersonalApConfiguration current = new PersonalApConfiguration(ssid, passphrase != null ? passphrase : "", type);
+        synchronized (stateLock) {
+            configuration = current;
+            state = OnboardingState.PERSONAL_AP_CONFIGURED_NOT_VALIDATED.getStateId();
+        }
+        execute(commandExecutor, saveTask);
+        ConnectionResultEmitter emitter = connectionResultEmitter;
+        if (emitter != null && backend instanceof FastChannelWifiBackend) {
+            // the signal can only reach an onboarder that called on a session
+            int sessionId = emitter.getCallSessionId();
+            if (sessionId != 0 && execute(commandExecutor, newValidation(current, emitter, sessionId))) {
+                return ConfigureWifiMode.FAST_CHANNNEL.getValue();
+            }
+        }
+        return ConfigureWifiMode.REGULAR.getValue();
+    }
+
+    /**
+     * @param current the configuration to validate
+     * @param emitter sends the result
+     * @param sessionId the session of the onboarder
+     * @return the task that validates the configuration and signals the result
+     */
+    private Runnable newValidation(final PersonalApConfiguration current, final ConnectionResultEmitter emitter, final int sessionId) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                OBLastError result = attempt(current, true);
+                if (result == null) {
+                    // offboarded or configured again, the onboarder isn't waiting for this result
+                    return;
+                }
+                try {
+                    emitter.emit(sessionId, result);
+                } catch (BusException e) {
+                    // the onboarder reads the result from LastError once it reconnects
+                }
+            }
+        };
+    }
+
+    /**
+     * Queue the connection to the configured personal AP. Nothing is done if
+     * the personal AP isn't configured. If the command executor rejects the
+     * connection, the rejection is recorded as the last error.
+     */
+    @Override
+    public void Connect() throws BusException {
+        final PersonalApConfiguration current = configuration;
+        if (current == null) {
+            return;
+        }
+        boolean isQueued = execute(commandExecutor, new Runnable() {
+            @Override
+            public void run() {
+                attempt(current, false);
+            }
+        });
+        if (!isQueued) {
+            recordRejected(current, "Connect");
+        }
+    }
+
+    /**
+     * Connect to or validate a configuration, and record the outcome. Called
+     * on the command executor. The state and last error are left to a
+     * configuration that replaced this one in the meantime.
+     *
+     * @param current the configuration to connect to
+     * @param isValidation true to validate the configuration in the fast
+     *            channel mode, false to connect to it
+     * @return the outcome, null if the configuration was replaced or removed
+     */
+    private OBLastError attempt(PersonalApConfiguration current, boolean isValidation) {
+        synchronized (stateLock) {
+            if (configuration != current) {
+                return null;
+            }
+            state = OnboardingState.PERSONAL_AP_CONFIGURED_VALIDATING.getStateId();
+        }
+        OBLastError result;
+        OnboardingState resultState;
+        try {
+            if (isValidation) {
+                ((FastChannelWifiBackend) backend).validate(current.ssid, current.passphrase, current.authType);
+            } else {
+                backend.connect(current.ssid, current.passphrase, current.authType);
+            }
+            result = newLastError(ConnectionResponseType.VALIDATED, "Validated");
+            resultState = OnboardingState.PERSONAL_AP_CONFIGURED_VALIDATED;
+        } catch (WifiBackendException e) {
+            result = newLastError(e.getResponseType(), e.getMessage());
+            resultState = OnboardingState.PERSONAL_AP_CONFIGURED_ERROR;
+        } catch (RuntimeException e) {
+            result = newLastError(ConnectionResponseType.ERROR_MESSAGE, String.valueOf(e.getMessage()));
+            resultState = OnboardingState.PERSONAL_AP_CONFIGURED_ERROR;
+        }
+        synchronized (stateLock) {
+            if (configuration != current) {
+                return null;
+            }
+            lastError = result;
+            state = resultState.getStateId();
+        }
+        save();
+        return result;
+    }
+
+    /**
+     * Queue the offboarding of the device. A configuration received after
+     * Offboard is kept. If the command executor rejects the offboarding, the
+     * rejection is recorded as the last error.
+     */
+    @Override
+    public void Offboard() throws BusException {
+        final PersonalApConfiguration offboarded = configuration;
+        boolean isQueued = execute(commandExecutor, new Runnable() {
+            @Override
+            public void run() {
+                OBLastError result;
+                boolean isOffboarded = false;
+                try {
+                    backend.offboard();
+                    result = newLastError(ConnectionResponseType.VALIDATED, "");
+                    isOffboarded = true;
+                } catch (WifiBackendException e) {
+                    result = newLastError(e.getResponseType(), e.getMessage());
+                } catch (RuntimeException e) {
+                    result = newLastError(ConnectionResponseType.ERROR_MESSAGE, String.valueOf(e.getMessage()));
+                }
+                synchronized (stateLock) {
+                    if (configuration != offboarded) {
+                        // configured again in the meantime
+                        return;
+                    }
+                    lastError = result;
+                    if (isOffboarded) {
+                        configuration = null;
+                        state = OnboardingState.PERSONAL_AP_NOT_CONFIGURED.getStateId();
+                    }
+                }
+                save();
+            }
+        });
+        if (!isQueued) {
+            recordRejected(offboarded, "Offboard");
+        }
+    }
+
+    /**
+     * Record that the command executor rejected a command, unless the
+     * configuration was replaced in the meantime. The state of a configured
+     * personal AP becomes an error.
+     *
+     * @param current the configuration the command was received with
+     * @param command the name of the rejected command
+     */
+    private void recordRejected(PersonalApConfiguration current, String command) {
+        synchronized (stateLock) {
+            if (configuration != current) {
+                return;
+            }
+            lastError = newLastError(ConnectionResponseType.ERROR_MESSAGE, command + " was rejected, the command executor is shut down");
+            if (current != null) {
+                state = OnboardingState.PERSONAL_AP_CONFIGURED_ERROR.getStateId();
+            }
+        }
+        save();
+    }
+
+    /**
+     * Answer with the last scan of the {@link ScanCache}
+     */
+    @Override
+    public ScanInfo GetScanInfo() throws BusException {
+        if (!scanCache.isScanSupported()) {
+            throw new ErrorReplyBusException(ERROR_FEATURE_NOT_AVAILABLE, "GetScanInfo is not supported");
+        }
+        return scanCache.getScanInfo();
+    }
+
+    /**
+     * The ConnectionResult signal, emitted through a {@link ConnectionResultEmitter}
+     */
+    @Override
+    public void ConnectionResult(ConnectionResultAJ connectionResultAJ) {
+    }
+
+    /**
+     * @param executor an executor
+     * @param task the task to run
+     * @return false if the executor rejected the task, because it is shut down
+     */
+    private static boolean execute(Executor executor, Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param ssid an SSID
+     * @return true if the SSID is not empty and at most {@value #MAX_SSID_LENGTH} bytes long
+     */
+    private static boolean isValidSsid(String ssid) {
+        if (ssid == null || ssid.length() == 0) {
+            return false;
+        }
+        try {
+            return ssid.getBytes("UTF-8").length <= MAX_SSID_LENGTH;
+        } catch (UnsupportedEncodingException e) {
+            return ssid.length() <= MAX_SSID_LENGTH;
+        }
+    }
+
+    private static OBLastError newLastError(ConnectionResponseType responseType, String message) {
+        return newLastError(responseType.getValue(), message);
+    }
+
+    private static OBLastError newLastError(short code, String message) {
+        OBLastError lastError = new OBLastError();
+        lastError.setErrorCode(code);
+        lastError.setErrorMessage(message != null ? message : "");
+        return lastError;
+    }
+}
@@ -0,0 +1,333 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.OnboardingService.OnboardingState;
+
+/**
+ * Keeps the onboarding of an {@link OnboardingServer} across restarts: the
+ * personal AP configuration, the onboarding state and the last error, in a
+ * small binary file.
+ * <p>
+ * A record is written to a temporary file next to the store file, synced to
+ * the disk, then renamed over the store file, so the store file always holds
+ * either the previous or the new record. Where the store file must be
+ * deleted before the rename, a record left in the temporary file is
+ * recovered by {@link #load()}. The record ends with a CRC32 of
+ * its content; a record that doesn't match is ignored as if the device had
+ * never been onboarded, never restored half way. The file is read at start
+ * in a single mapped read.
+ * <p>
+ * The passphrase is stored as is, the file must be readable only by the
+ * onboarding service.
+ */
+public class OnboardingStore {
+
+    /**
+     * Identifies the store files, "OBST"
+     */
+    private static final int MAGIC = 0x4F425354;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Size of the magic, format version and checksum
+     */
+    private static final int FRAME_SIZE = 4 + 1 + 4;
+
+    /**
+     * Maximal size of a store file, larger files are ignored
+     */
+    private static final int MAX_FILE_SIZE = 65536;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * An onboarding as stored. Immutable.
+     */
+    public static final class Record {
+        private final short state;
+        private final String ssid;
+        private final String passphrase;
+        private final short authType;
+        private final short lastErrorCode;
+        private final String lastErrorMessage;
+
+        /**
+         * Constructor
+         *
+         * @param state the onboarding state id
+         * @param ssid the personal AP SSID, null if not configured
+         * @param passphrase the personal AP passphrase, null if not configured
+         * @param authType the authentication type id of the personal AP
+         * @param lastErrorCode the last error code
+         * @param lastErrorMessage the last error message
+         */
+        public Record(short state, String ssid, String passphrase, short authType, short lastErrorCode, String lastErrorMessage) {
+            this.state = state;
+            this.ssid = ssid;
+            this.passphrase = passphrase;
+            this.authType = authType;
+            this.lastErrorCode = lastErrorCode;
+            this.lastErrorMessage = lastErrorMessage != null ? lastErrorMessage : "";
+        }
+
+        /**
+         * @return the onboarding state id
+         */
+        public short getState() {
+            return state;
+        }
+
+        /**
+         * @return the personal AP SSID, null if not configured
+         */
+        public String getSsid() {
+            return ssid;
+        }
+
+        /**
+         * @return the personal AP passphrase, null if not configured
+         */
+        public String getPassphrase() {
+            return passphrase;
+        }
+
+        /**
+         * @return the authentication type id of the personal AP
+         */
+        public short getAuthType() {
+            return authType;
+        }
+
+        /**
+         * @return the last error code
+         */
+        public short getLastErrorCode() {
+            return lastErrorCode;
+        }
+
+        /**
+         * @return the last error message
+         */
+        public String getLastErrorMessage() {
+            return lastErrorMessage;
+        }
+    }
+
+    private final File file;
+    private final File tempFile;
+
+    /**
+     * Constructor
+     *
+     * @param file the store file. Its directory must exist.
+     */
+    public OnboardingStore(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file must not be null");
+        }
+        this.file = file;
+        this.tempFile = new File(file.getPath() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Read the stored record. If the store file is missing or invalid while
+     * the temporary file holds a valid record, the write was interrupted
+     * between the removal of the store file and the rename, and the
+     * temporary file is moved into place. Otherwise a temporary file left by
+     * an interrupted write is deleted.
+     *
+     * @return the stored record, null if there is none or it is invalid
+     */
+    public synchronized Record load() {
+        Record record = read(file);
+        if (record == null) {
+            record = read(tempFile);
+            if (record != null) {
+                file.delete();
+                tempFile.renameTo(file);
+                return record;
+            }
+        }
+        tempFile.delete();
+        return record;
+    }
+
+    /**
+     * @param source a store file
+     * @return its record, null if there is none or it is invalid
+     */
+    private static Record read(File source) {
+        long length = source.length();
+        if (length < FRAME_SIZE || length > MAX_FILE_SIZE) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(source);
+            try {
+                FileChannel channel = in.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return decode(buffer);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the record, replacing the stored one once it is on the disk
+     *
+     * @param record the record to store
+     * @throws IOException if the record can't be written. The stored record
+     *             is kept, or left in the temporary file for {@link #load()}.
+     */
+    public synchronized void save(Record record) throws IOException {
+        byte[] content = encode(record);
+        if (content.length > MAX_FILE_SIZE) {
+            throw new IOException("Record too large to be stored");
+        }
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(content);
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            // platforms that don't rename over an existing file. Until the
+            // rename the temporary file holds the only record, load()
+            // recovers it if the rename doesn't happen.
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Delete the stored record
+     */
+    public synchronized void clear() {
+        tempFile.delete();
+        file.delete();
+    }
+
+    /**
+     * @param record a record
+     * @return the content of a store file holding the record
+     * @throws IOException
+     */
+    private static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeShort(record.state);
+        out.writeShort(record.authType);
+        out.writeShort(record.lastErrorCode);
+        writeString(out, record.ssid);
+        writeString(out, record.passphrase);
+        writeString(out, record.lastErrorMessage);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param buffer the content of a store file
+     * @return the record, null if the content isn't a valid record
+     */
+    private static Record decode(ByteBuffer buffer) {
+        int size = buffer.remaining();
+        if (size < FRAME_SIZE) {
+            return null;
+        }
+        byte[] content = new byte[size];
+        buffer.get(content);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, size - 4);
+        ByteBuffer in = ByteBuffer.wrap(content);
+        if (in.getInt(size - 4) != (int) crc.getValue() || in.getInt() != MAGIC || in.get() != FORMAT_VERSION) {
+            return null;
+        }
+        try {
+            short state = in.getShort();
+            short authType = in.getShort();
+            short lastErrorCode = in.getShort();
+            String ssid = readString(in);
+            String passphrase = readString(in);
+            String lastErrorMessage = readString(in);
+            if (OnboardingState.getStateById(state) == null || AuthType.getAuthTypeById(authType) == null) {
+                return null;
+            }
+            return new Record(state, ssid, passphrase, authType, lastErrorCode, lastErrorMessage);
+        } catch (RuntimeException e) {
+            // truncated record with a matching checksum
+            return null;
+        }
+    }
+
+    /**
+     * Write a string as its UTF-8 length, -1 for null, and bytes
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes("UTF-8");
+        if (utf8.length > Short.MAX_VALUE) {
+            throw new IOException("String too long to be stored");
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        short length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        try {
+            return new String(utf8, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
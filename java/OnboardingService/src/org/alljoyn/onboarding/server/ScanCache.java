@@ -0,0 +1,219 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.MyScanResult;
+import org.alljoyn.onboarding.transport.ScanInfo;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * The last scan of an onboardee radio, refreshed in the background. Readers
+ * never wait for a scan: they get the last one, and a new one is started on
+ * the scan executor when it is older than the refresh interval. A completed
+ * scan is encoded once into an immutable snapshot, which replaces the
+ * previous one in a single write, so GetScanInfo is a lock-free read that
+ * only computes the age of the snapshot. Onboardees
+ * that share a radio, such as the devices of an {@link OnboardingGateway},
+ * share a cache.
+ */
+public class ScanCache {
+
+    /**
+     * Default age of the last scan after which a new one is started
+     * {@value #DEFAULT_REFRESH_INTERVAL} msec
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 60 * 1000;
+
+    /**
+     * Refresh interval of a cache whose reads never start a scan, for
+     * example when the scans are published by a {@link ScanFileWatcher}
+     */
+    public static final long NO_REFRESH = Long.MAX_VALUE;
+
+    private static final long NANOS_PER_MINUTE = 60 * 1000000000L;
+
+    private static final MyScanResult[] NO_SCAN_RESULTS = new MyScanResult[0];
+
+    /**
+     * Does the scans
+     */
+    private final WifiBackend backend;
+
+    /**
+     * Runs the scans
+     */
+    private final Executor executor;
+
+    private final long refreshInterval;
+
+    /**
+     * A completed scan, encoded for GetScanInfo. Never modified once published.
+     */
+    private static final class Snapshot {
+        private final ScanTable scan;
+
+        /**
+         * The scan results as answered by GetScanInfo, shared by all the answers
+         */
+        private final MyScanResult[] scanResults;
+
+        /**
+         * When the scan completed, in {@link System#nanoTime()} units
+         */
+        private final long completionNanos;
+
+        private Snapshot(ScanTable scan, long completionNanos) {
+            this.scan = scan;
+            this.scanResults = scan.toScanInfo().getScanResults();
+            this.completionNanos = completionNanos;
+        }
+    }
+
+    /**
+     * The last scan, null until the first scan completed
+     */
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * Whether a scan is running or queued
+     */
+    private final AtomicBoolean isScanning = new AtomicBoolean(false);
+
+    /**
+     * Constructor
+     *
+     * @param backend does the scans
+     * @param executor runs the scans
+     * @param refreshInterval age of the last scan in msec after which a new
+     *            one is started, or {@link #NO_REFRESH}
+     */
+    public ScanCache(WifiBackend backend, Executor executor, long refreshInterval) {
+        if (backend == null || executor == null) {
+            throw new IllegalArgumentException("backend and executor must not be null");
+        }
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("refreshInterval must not be negative");
+        }
+        this.backend = backend;
+        this.executor = executor;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * @return true if the radio can scan, see {@link WifiBackend#isScanSupported()}
+     */
+    public boolean isScanSupported() {
+        return backend.isScanSupported();
+    }
+
+    /**
+     * Start a scan, unless one is already running or the radio can't scan
+     */
+    public void refresh() {
+        if (!backend.isScanSupported() || !isScanning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ScanTable scan = backend.scan();
+                        if (scan != null) {
+                            snapshot = new Snapshot(scan, System.nanoTime());
+                        }
+                    } catch (WifiBackendException e) {
+                        // the last scan is kept, a new one is tried on the next read
+                    } finally {
+                        isScanning.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            isScanning.set(false);
+        }
+    }
+
+    /**
+     * Publish a scan made outside of the cache, such as a scan results file
+     * written by another process. It replaces the last scan.
+     *
+     * @param scan the scan results, the age of the table is added to the
+     *            time since the scan
+     * @param scanTime when the scan was made, in msec as
+     *            {@link System#currentTimeMillis()}
+     */
+    public void publish(ScanTable scan, long scanTime) {
+        if (scan == null) {
+            throw new IllegalArgumentException("scan must not be null");
+        }
+        long elapsedMillis = Math.max(System.currentTimeMillis() - scanTime, 0);
+        snapshot = new Snapshot(scan, System.nanoTime() - elapsedMillis * 1000000L);
+    }
+
+    /**
+     * @return the last scan as answered by GetScanInfo, its age including
+     *         the time since it was made. No access points until the first
+     *         scan completed. The scan results are shared by all the answers
+     *         and must not be modified.
+     */
+    public ScanInfo getScanInfo() {
+        Snapshot current = snapshot;
+        ScanInfo scanInfo = new ScanInfo();
+        if (current == null) {
+            if (refreshInterval != NO_REFRESH) {
+                refresh();
+            }
+            scanInfo.setScanResult(NO_SCAN_RESULTS);
+            return scanInfo;
+        }
+        long elapsedNanos = System.nanoTime() - current.completionNanos;
+        if (elapsedNanos / 1000000L >= refreshInterval) {
+            refresh();
+        }
+        long age = current.scan.getAge() + elapsedNanos / NANOS_PER_MINUTE;
+        scanInfo.setAge((short) Math.min(age, Short.MAX_VALUE));
+        scanInfo.setScanResult(current.scanResults);
+        return scanInfo;
+    }
+
+    /**
+     * @param ssid an SSID
+     * @return the authentication type of the SSID in the last scan, or
+     *         {@link AuthType#ANY} if not known
+     */
+    public AuthType getAuthType(String ssid) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            ScanTable scan = current.scan;
+            int index = scan.indexOf(ssid);
+            if (index >= 0) {
+                AuthType type = scan.getAuthTypeEnum(index);
+                if (type != null) {
+                    return type;
+                }
+            }
+        }
+        return AuthType.ANY;
+    }
+}
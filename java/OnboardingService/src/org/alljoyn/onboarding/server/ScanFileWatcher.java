@@ -0,0 +1,184 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * Publishes a scan results file, as written by the scan script of the
+ * onboarding daemon, into a {@link ScanCache} whenever the file changes.
+ * The file is stat'ed on a timer thread and parsed with
+ * {@link ScanResultsParser} only once its modification time and length have
+ * stopped changing for the debounce delay, so a burst of writes is parsed
+ * once. The scan is published with the modification time of the file, from
+ * which the age of GetScanInfo is computed, so GetScanInfo does no I/O.
+ * <p>
+ * The file is expected to be replaced or rewritten as a whole. If it can't
+ * be parsed the last scan is kept until the file changes again.
+ */
+public class ScanFileWatcher {
+
+    /**
+     * Default period of the file checks {@value #DEFAULT_POLL_INTERVAL} msec
+     */
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+    /**
+     * Default time the file must be unchanged before it is parsed
+     * {@value #DEFAULT_DEBOUNCE_DELAY} msec
+     */
+    public static final long DEFAULT_DEBOUNCE_DELAY = 500;
+
+    private final File file;
+    private final ScanCache scanCache;
+    private final long pollInterval;
+    private final long debounceDelay;
+
+    private Timer timer = null;
+
+    /**
+     * Modification time and length of the last version of the file that was parsed
+     */
+    private long parsedModified = 0;
+    private long parsedLength = -1;
+
+    /**
+     * Modification time and length of the file when it was last seen
+     * changing, and when it was seen so
+     */
+    private long pendingModified = 0;
+    private long pendingLength = -1;
+    private long pendingSince = 0;
+
+    /**
+     * Number of versions of the file that couldn't be parsed
+     */
+    private volatile int failureCount = 0;
+
+    /**
+     * Constructor using the default poll interval and debounce delay
+     *
+     * @param file the scan results file
+     * @param scanCache receives the scans
+     */
+    public ScanFileWatcher(File file, ScanCache scanCache) {
+        this(file, scanCache, DEFAULT_POLL_INTERVAL, DEFAULT_DEBOUNCE_DELAY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param file the scan results file
+     * @param scanCache receives the scans
+     * @param pollInterval period of the file checks in msec
+     * @param debounceDelay time in msec the file must be unchanged before it is parsed
+     */
+    public ScanFileWatcher(File file, ScanCache scanCache, long pollInterval, long debounceDelay) {
+        if (file == null || scanCache == null) {
+            throw new IllegalArgumentException("file and scanCache must not be null");
+        }
+        if (pollInterval <= 0 || debounceDelay < 0) {
+            throw new IllegalArgumentException("invalid poll interval or debounce delay");
+        }
+        this.file = file;
+        this.scanCache = scanCache;
+        this.pollInterval = pollInterval;
+        this.debounceDelay = debounceDelay;
+    }
+
+    /**
+     * Start checking the file. The file is parsed on the first check if it
+     * hasn't been modified within the debounce delay.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = new Timer("ScanFileWatcher", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, 0, pollInterval);
+    }
+
+    /**
+     * Stop checking the file. The last scan stays in the cache.
+     */
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    /**
+     * @return number of versions of the file that couldn't be parsed
+     */
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Parse and publish the file if it changed and has settled. Called on
+     * the timer thread.
+     */
+    private void check() {
+        long modified = file.lastModified();
+        if (modified == 0) {
+            // no file yet, or being replaced
+            return;
+        }
+        long length = file.length();
+        if (modified == parsedModified && length == parsedLength) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (modified != pendingModified || length != pendingLength) {
+            pendingModified = modified;
+            pendingLength = length;
+            pendingSince = now;
+        }
+        if (now - pendingSince < debounceDelay && now - modified < debounceDelay) {
+            return;
+        }
+        parsedModified = modified;
+        parsedLength = length;
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            ScanTable scan;
+            try {
+                scan = ScanResultsParser.parse(reader, (short) 0);
+            } finally {
+                reader.close();
+            }
+            scanCache.publish(scan, modified);
+        } catch (IOException e) {
+            ++failureCount;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * Parses the Wi-Fi scan results file of the onboarding daemon, a JSON array
+ * with one object per access point:
+ *
+ * <pre>
+ * [{"ssid":"AJ_QA","bssid":"F8:1A:67:...","channel":11,"signal":-53,
+ *   "encryption":{"wep":false,"wpa":2,"group_ciphers":["CCMP"],...},...},...]
+ * </pre>
+ *
+ * The file is read as a stream, a buffer at a time, straight into a
+ * {@link ScanTable}: no tree of the document is built, keys are matched in a
+ * reused buffer, and the only object kept per access point is its SSID. The
+ * encryption object is mapped to an {@link AuthType} as the C++ daemon does
+ * in TranslateToOBAuthType. Entries without an SSID are skipped, and a
+ * repeated SSID keeps its first, strongest, entry. The other fields are
+ * skipped, as GetScanInfo doesn't answer them.
+ */
+public final class ScanResultsParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Approximate size of an entry in the file, to size the table
+     */
+    private static final int BYTES_PER_ENTRY = 300;
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    /**
+     * The group ciphers of an access point, as classified by the C++ daemon
+     */
+    private static final int CIPHER_NONE = 0;
+    private static final int CIPHER_TKIP = 1;
+    private static final int CIPHER_CCMP = 2;
+    private static final int CIPHER_BOTH = 3;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Offset of the buffer in the stream, for the error messages
+     */
+    private long bufferOffset = 0;
+
+    /**
+     * The last string read, reused for every string
+     */
+    private final StringBuilder text = new StringBuilder(64);
+
+    private final ScanTable.Builder builder;
+
+    /**
+     * The SSIDs already in the table
+     */
+    private final Set<String> ssids = new HashSet<String>();
+
+    /**
+     * Parse a scan results file
+     *
+     * @param file the scan results file
+     * @return the scan results, their age is the time since the file was last
+     *         modified
+     * @throws IOException if the file can't be read or isn't a valid scan
+     *             results array
+     */
+    public static ScanTable parse(File file) throws IOException {
+        long ageMillis = Math.max(System.currentTimeMillis() - file.lastModified(), 0);
+        short age = (short) Math.min(ageMillis / MILLIS_PER_MINUTE, Short.MAX_VALUE);
+        int expectedSize = (int) Math.min(file.length() / BYTES_PER_ENTRY, Integer.MAX_VALUE);
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            return new ScanResultsParser(reader, expectedSize, age).parse();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parse scan results. The reader is read to its end but isn't closed.
+     *
+     * @param reader the scan results
+     * @param age how long ago the scan was performed, in minutes
+     * @return the scan results
+     * @throws IOException if the reader fails or the input isn't a valid scan
+     *             results array
+     */
+    public static ScanTable parse(Reader reader, short age) throws IOException {
+        return new ScanResultsParser(reader, 0, age).parse();
+    }
+
+    private ScanResultsParser(Reader reader, int expectedSize, short age) {
+        this.reader = reader;
+        this.builder = new ScanTable.Builder(expectedSize).setAge(age);
+    }
+
+    /**
+     * @return the table of the entries of the array
+     * @throws IOException
+     */
+    private ScanTable parse() throws IOException {
+        expect(nextToken(), '[');
+        int c = nextToken();
+        if (c != ']') {
+            while (true) {
+                expect(c, '{');
+                parseEntry();
+                c = nextToken();
+                if (c == ']') {
+                    break;
+                }
+                expect(c, ',');
+                c = nextToken();
+            }
+        }
+        if (nextToken() != -1) {
+            throw syntaxError("end of input");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parse an access point object, its opening brace already read, and add
+     * it to the table
+     *
+     * @throws IOException
+     */
+    private void parseEntry() throws IOException {
+        String ssid = null;
+        short authType = AuthType.ANY.getTypeId();
+        int c = nextToken();
+        if (c != '}') {
+            while (true) {
+                readKey(c);
+                c = nextToken();
+                if (isText("ssid") && c == '"') {
+                    readString();
+                    ssid = text.toString();
+                } else if (isText("encryption") && c == '{') {
+                    authType = parseEncryption();
+                } else {
+                    skipValue(c);
+                }
+                c = nextToken();
+                if (c == '}') {
+                    break;
+                }
+                expect(c, ',');
+                c = nextToken();
+            }
+        }
+        if (ssid != null && ssid.length() > 0 && ssids.add(ssid)) {
+            builder.add(ssid, authType);
+        }
+    }
+
+    /**
+     * Parse an encryption object, its opening brace already read
+     *
+     * @return the authentication type id of the access point
+     * @throws IOException
+     */
+    private short parseEncryption() throws IOException {
+        boolean isWep = false;
+        int wpa = -1;
+        int groupCiphers = CIPHER_NONE;
+        int c = nextToken();
+        if (c != '}') {
+            while (true) {
+                readKey(c);
+                c = nextToken();
+                if (isText("wep") && c == 't') {
+                    expectLiteral("true");
+                    isWep = true;
+                } else if (isText("wpa") && (c == '-' || (c >= '0' && c <= '9'))) {
+                    wpa = readInt(c);
+                } else if (isText("group_ciphers") && c == '[') {
+                    groupCiphers = parseGroupCiphers();
+                } else {
+                    skipValue(c);
+                }
+                c = nextToken();
+                if (c == '}') {
+                    break;
+                }
+                expect(c, ',');
+                c = nextToken();
+            }
+        }
+        if (isWep) {
+            return AuthType.WEP.getTypeId();
+        }
+        return getAuthType(wpa, groupCiphers).getTypeId();
+    }
+
+    /**
+     * Parse the group ciphers array, its opening bracket already read
+     *
+     * @return the cipher class: none, TKIP, CCMP or both when there are
+     *         several ciphers
+     * @throws IOException
+     */
+    private int parseGroupCiphers() throws IOException {
+        int count = 0;
+        int first = CIPHER_NONE;
+        int c = nextToken();
+        if (c != ']') {
+            while (true) {
+                if (c == '"') {
+                    readString();
+                    if (count == 0) {
+                        first = isText("TKIP") ? CIPHER_TKIP : isText("CCMP") ? CIPHER_CCMP : CIPHER_NONE;
+                    }
+                } else {
+                    skipValue(c);
+                }
+                ++count;
+                c = nextToken();
+                if (c == ']') {
+                    break;
+                }
+                expect(c, ',');
+                c = nextToken();
+            }
+        }
+        return count > 1 ? CIPHER_BOTH : first;
+    }
+
+    /**
+     * Map the encryption of an access point as TranslateToOBAuthType does
+     *
+     * @param wpa the WPA version: 0 for none, 1 for WPA, 2 for WPA2, 3 for
+     *            mixed WPA/WPA2, -1 if not known
+     * @param groupCiphers the cipher class of the group ciphers
+     * @return the authentication type
+     */
+    static AuthType getAuthType(int wpa, int groupCiphers) {
+        switch (wpa) {
+        case 0:
+            return AuthType.OPEN;
+        case 1:
+            return groupCiphers == CIPHER_TKIP ? AuthType.WPA_TKIP : groupCiphers == CIPHER_CCMP ? AuthType.WPA_CCMP : AuthType.WPA_AUTO;
+        case 2:
+        case 3:
+            return groupCiphers == CIPHER_TKIP ? AuthType.WPA2_TKIP : groupCiphers == CIPHER_CCMP ? AuthType.WPA2_CCMP : AuthType.WPA2_AUTO;
+        default:
+            return AuthType.ANY;
+        }
+    }
+
+    /**
+     * Read an object key and its colon
+     *
+     * @param c the first character of the key
+     * @throws IOException
+     */
+    private void readKey(int c) throws IOException {
+        expect(c, '"');
+        readString();
+        expect(nextToken(), ':');
+    }
+
+    /**
+     * @param value a constant
+     * @return true if the last string read is equal to the constant
+     */
+    private boolean isText(String value) {
+        return value.contentEquals(text);
+    }
+
+    /**
+     * Read a string, its opening quote already read, into {@link #text}
+     *
+     * @throws IOException
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == -1) {
+                throw syntaxError("'\"'");
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                text.append((char) c);
+                break;
+            case 'b':
+                text.append('\b');
+                break;
+            case 'f':
+                text.append('\f');
+                break;
+            case 'n':
+                text.append('\n');
+                break;
+            case 'r':
+                text.append('\r');
+                break;
+            case 't':
+                text.append('\t');
+                break;
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("a hexadecimal digit");
+                    }
+                    code = (code << 4) | digit;
+                }
+                text.append((char) code);
+                break;
+            default:
+                throw syntaxError("an escape sequence");
+            }
+        }
+    }
+
+    /**
+     * Read an integer, skipping a fraction or exponent if any
+     *
+     * @param c the first character of the number
+     * @return the integer part of the number
+     * @throws IOException
+     */
+    private int readInt(int c) throws IOException {
+        boolean isNegative = c == '-';
+        if (isNegative) {
+            c = read();
+        }
+        if (c < '0' || c > '9') {
+            throw syntaxError("a digit");
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+            c = read();
+        }
+        unread(c);
+        skipScalarRest();
+        return (int) (isNegative ? -value : value);
+    }
+
+    /**
+     * Read the rest of a literal
+     *
+     * @param literal the literal, its first character already read
+     * @throws IOException
+     */
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 1; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw syntaxError("'" + literal + "'");
+            }
+        }
+    }
+
+    /**
+     * Skip a value. The content of skipped objects and arrays is only checked
+     * for balanced brackets.
+     *
+     * @param c the first character of the value
+     * @throws IOException
+     */
+    private void skipValue(int c) throws IOException {
+        switch (c) {
+        case '"':
+            readString();
+            return;
+        case '{':
+        case '[':
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    readString();
+                } else if (c == '{' || c == '[') {
+                    ++depth;
+                } else if (c == '}' || c == ']') {
+                    --depth;
+                } else if (c == -1) {
+                    throw syntaxError("']' or '}'");
+                }
+            }
+            return;
+        case 't':
+            expectLiteral("true");
+            return;
+        case 'f':
+            expectLiteral("false");
+            return;
+        case 'n':
+            expectLiteral("null");
+            return;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                skipScalarRest();
+                return;
+            }
+            throw syntaxError("a value");
+        }
+    }
+
+    /**
+     * Skip the characters of a number up to the next delimiter
+     *
+     * @throws IOException
+     */
+    private void skipScalarRest() throws IOException {
+        int c = read();
+        while (c != -1 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+            c = read();
+        }
+        unread(c);
+    }
+
+    /**
+     * @param c the next token
+     * @param expected the expected token
+     * @throws IOException if the token isn't the expected one
+     */
+    private void expect(int c, char expected) throws IOException {
+        if (c != expected) {
+            throw syntaxError("'" + expected + "'");
+        }
+    }
+
+    /**
+     * @return the next character that isn't a whitespace, -1 at the end of input
+     * @throws IOException
+     */
+    private int nextToken() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * @return the next character, -1 at the end of input
+     * @throws IOException
+     */
+    private int read() throws IOException {
+        if (position == limit) {
+            bufferOffset += limit;
+            position = 0;
+            limit = 0;
+            int count = reader.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return -1;
+            }
+            limit = count;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Push back the character just read, which is still in the buffer
+     *
+     * @param c the character just read, or -1 at the end of input
+     */
+    private void unread(int c) {
+        if (c != -1) {
+            --position;
+        }
+    }
+
+    /**
+     * @param expected what was expected
+     * @return the exception reporting the offset of the unexpected character
+     */
+    private IOException syntaxError(String expected) {
+        return new IOException("Invalid scan results at offset " + (bufferOffset + position) + ", expected " + expected);
+    }
+}
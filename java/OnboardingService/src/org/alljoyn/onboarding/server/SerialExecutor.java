@@ -0,0 +1,134 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared
+ * executor. Lets many onboardees share a thread pool while the commands of
+ * each one stay ordered. At most one task of a SerialExecutor is queued on
+ * the shared executor at a time. If the shared executor rejects the next
+ * task while one is finishing, the pending tasks are run on the thread of
+ * the finished one rather than dropped.
+ */
+public class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+    /**
+     * True while {@link #runner} is queued on or running on the shared executor
+     */
+    private boolean isScheduled = false;
+
+    /**
+     * Runs the next pending task, and the following ones as long as the
+     * shared executor rejects them
+     */
+    private final Runnable runner = new Runnable() {
+        @Override
+        public void run() {
+            Throwable failure = null;
+            Runnable task = nextTask();
+            while (task != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failure = failure != null ? failure : e;
+                } catch (Error e) {
+                    failure = failure != null ? failure : e;
+                }
+                task = scheduleNext();
+            }
+            // the failure of a task reaches the shared executor once the pending ones are run
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param executor the shared executor
+     */
+    public SerialExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the shared executor rejected the
+     *             task while none of the previous ones was pending. The task
+     *             is not queued then.
+     */
+    @Override
+    public synchronized void execute(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("task must not be null");
+        }
+        tasks.offer(task);
+        if (isScheduled) {
+            return;
+        }
+        try {
+            executor.execute(runner);
+            isScheduled = true;
+        } catch (RejectedExecutionException e) {
+            tasks.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the next pending task
+     */
+    private synchronized Runnable nextTask() {
+        return tasks.poll();
+    }
+
+    /**
+     * Queue {@link #runner} on the shared executor for the next pending task.
+     * Called by the runner once a task is done.
+     *
+     * @return the next pending task, to be run by the caller, if the shared
+     *         executor rejected the runner, null otherwise
+     */
+    private synchronized Runnable scheduleNext() {
+        if (tasks.isEmpty()) {
+            isScheduled = false;
+            return null;
+        }
+        try {
+            executor.execute(runner);
+            return null;
+        } catch (RejectedExecutionException e) {
+            // keep the commands in order on this thread
+            return tasks.poll();
+        }
+    }
+}
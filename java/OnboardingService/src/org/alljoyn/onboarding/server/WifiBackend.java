@@ -0,0 +1,67 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+import org.alljoyn.onboarding.transport.ScanTable;
+
+/**
+ * The Wi-Fi operations of an onboardee, such as calling the platform Wi-Fi
+ * API or running the configuration scripts of the device. The
+ * {@link OnboardingServer} calls them on its worker threads, never on the
+ * AllJoyn bus threads, so they may block for as long as the operation takes.
+ */
+public interface WifiBackend {
+
+    /**
+     * @return true if the device can scan the access points in its
+     *         proximity. If false GetScanInfo is answered with
+     *         org.alljoyn.Error.FeatureNotAvailable.
+     */
+    public boolean isScanSupported();
+
+    /**
+     * Scan the access points in the proximity of the device
+     *
+     * @return the scan results, the age of the table is the age of the scan
+     * @throws WifiBackendException if the scan fails
+     */
+    public ScanTable scan() throws WifiBackendException;
+
+    /**
+     * Leave the soft AP and connect to the personal AP. Called after
+     * Connect is received.
+     *
+     * @param ssid the personal AP SSID
+     * @param passphrase the personal AP passphrase, as sent by the onboarder
+     * @param authType the authentication type of the personal AP,
+     *            {@link AuthType#ANY} if neither the onboarder nor the last
+     *            scan knew it
+     * @throws WifiBackendException if the device failed to connect. The
+     *             backend is expected to have restored the soft AP.
+     */
+    public void connect(String ssid, String passphrase, AuthType authType) throws WifiBackendException;
+
+    /**
+     * Disconnect from the personal AP, forget its configuration, and start
+     * the soft AP. Called after Offboard is received.
+     *
+     * @throws WifiBackendException if the device failed to offboard
+     */
+    public void offboard() throws WifiBackendException;
+}
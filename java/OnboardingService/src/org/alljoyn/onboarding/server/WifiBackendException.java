@@ -0,0 +1,62 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.server;
+
+import org.alljoyn.onboarding.transport.ConnectionResult.ConnectionResponseType;
+
+/**
+ * Thrown by a {@link WifiBackend} when a Wi-Fi operation fails. The response
+ * type is reported to the onboarder as the LastError code.
+ */
+public class WifiBackendException extends Exception {
+    private static final long serialVersionUID = 2706151640234217394L;
+
+    /**
+     * Why the operation failed
+     */
+    private final ConnectionResponseType responseType;
+
+    /**
+     * Constructor
+     *
+     * @param responseType why the operation failed
+     * @param message the error message reported to the onboarder
+     */
+    public WifiBackendException(ConnectionResponseType responseType, String message) {
+        super(message);
+        this.responseType = responseType != null ? responseType : ConnectionResponseType.ERROR_MESSAGE;
+    }
+
+    /**
+     * Constructor, for failures that aren't one of the specific response types
+     *
+     * @param message the error message reported to the onboarder
+     * @param cause the cause of the failure
+     */
+    public WifiBackendException(String message, Throwable cause) {
+        super(message, cause);
+        this.responseType = ConnectionResponseType.ERROR_MESSAGE;
+    }
+
+    /**
+     * @return why the operation failed
+     */
+    public ConnectionResponseType getResponseType() {
+        return responseType;
+    }
+}
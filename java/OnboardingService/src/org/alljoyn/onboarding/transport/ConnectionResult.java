@@ -83,14 +83,26 @@ public class ConnectionResult {
         }
 
         public static ConnectionResponseType getConnectionResponseTypeByValue(short value) {
-            ConnectionResponseType ret = null;
-            for (ConnectionResponseType responseType : ConnectionResponseType.values()) {
-                if (value == responseType.getValue()) {
-                    ret = responseType;
-                    break;
-                }
+            return value >= 0 && value < TYPES_BY_VALUE.length ? TYPES_BY_VALUE[value] : null;
+        }
+
+        /**
+         * The response types indexed by value, so that decoding a signal
+         * doesn't scan nor copy {@link #values()}. The values are small and
+         * not negative.
+         */
+        private static final ConnectionResponseType[] TYPES_BY_VALUE;
+
+        static {
+            ConnectionResponseType[] types = values();
+            short max = 0;
+            for (ConnectionResponseType type : types) {
+                max = (short) Math.max(max, type.value);
+            }
+            TYPES_BY_VALUE = new ConnectionResponseType[max + 1];
+            for (ConnectionResponseType type : types) {
+                TYPES_BY_VALUE[type.value] = type;
             }
-            return ret;
         }
     }
 
@@ -63,14 +63,25 @@ public interface OnboardingTransport extends BusObject {
         }
 
         public static ConfigureWifiMode getConfigureWifiModeByValue(short value) {
-            ConfigureWifiMode retState = null;
-            for (ConfigureWifiMode responseType : ConfigureWifiMode.values()) {
-                if (value == responseType.getValue()) {
-                    retState = responseType;
-                    break;
-                }
+            return value >= 0 && value < MODES_BY_VALUE.length ? MODES_BY_VALUE[value] : null;
+        }
+
+        /**
+         * The modes indexed by value, so that decoding doesn't scan nor copy
+         * {@link #values()}. The values are small and not negative.
+         */
+        private static final ConfigureWifiMode[] MODES_BY_VALUE;
+
+        static {
+            ConfigureWifiMode[] modes = values();
+            short max = 0;
+            for (ConfigureWifiMode mode : modes) {
+                max = (short) Math.max(max, mode.value);
+            }
+            MODES_BY_VALUE = new ConfigureWifiMode[max + 1];
+            for (ConfigureWifiMode mode : modes) {
+                MODES_BY_VALUE[mode.value] = mode;
             }
-            return retState;
         }
     }
 
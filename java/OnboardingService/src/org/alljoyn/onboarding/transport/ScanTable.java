@@ -0,0 +1,254 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.transport;
+
+import java.util.Arrays;
+
+import org.alljoyn.onboarding.OnboardingService.AuthType;
+
+/**
+ * A compact, read-only table of Wi-Fi scan results: the SSIDs and the
+ * authentication types are held in two parallel columns instead of a
+ * {@link MyScanResult} object per access point, and the SSIDs are interned.
+ * The entries are read in place by index, without copying.
+ * <p>
+ * On the onboarder side a table is decoded once from the received
+ * {@link ScanInfo}, after which the MyScanResult objects can be dropped. On
+ * the onboardee side a table is built with a {@link Builder} and turned into
+ * a {@link ScanInfo} only when GetScanInfo is answered.
+ */
+public final class ScanTable {
+
+    /**
+     * An empty table
+     */
+    public static final ScanTable EMPTY = new ScanTable((short) 0, new String[0], new short[0], 0);
+
+    /**
+     * How long ago the scan was performed, in minutes
+     */
+    private final short age;
+
+    /**
+     * The SSID column
+     */
+    private final String[] ssids;
+
+    /**
+     * The authentication type column
+     */
+    private final short[] authTypes;
+
+    /**
+     * Number of entries
+     */
+    private final int size;
+
+    /**
+     * Builds a {@link ScanTable} entry by entry
+     */
+    public static final class Builder {
+        private String[] ssids;
+        private short[] authTypes;
+        private int size = 0;
+        private short age = 0;
+        private final SsidInterner interner;
+
+        /**
+         * Constructor using the default interner
+         *
+         * @param expectedSize expected number of entries
+         */
+        public Builder(int expectedSize) {
+            this(expectedSize, SsidInterner.getDefault());
+        }
+
+        /**
+         * Constructor
+         *
+         * @param expectedSize expected number of entries
+         * @param interner interns the SSIDs, or null not to intern them
+         */
+        public Builder(int expectedSize, SsidInterner interner) {
+            int capacity = Math.max(expectedSize, 4);
+            this.ssids = new String[capacity];
+            this.authTypes = new short[capacity];
+            this.interner = interner;
+        }
+
+        /**
+         * @param age how long ago the scan was performed, in minutes
+         * @return this builder
+         */
+        public Builder setAge(short age) {
+            this.age = age;
+            return this;
+        }
+
+        /**
+         * Add an entry
+         *
+         * @param ssid the SSID of the access point
+         * @param authType the authentication type id of the access point, see {@link AuthType}
+         * @return this builder
+         */
+        public Builder add(String ssid, short authType) {
+            if (size == ssids.length) {
+                int capacity = size * 2;
+                ssids = Arrays.copyOf(ssids, capacity);
+                authTypes = Arrays.copyOf(authTypes, capacity);
+            }
+            ssids[size] = interner != null ? interner.intern(ssid) : ssid;
+            authTypes[size] = authType;
+            ++size;
+            return this;
+        }
+
+        /**
+         * @return the table. The builder must not be used afterwards.
+         */
+        public ScanTable build() {
+            if (size == 0) {
+                return new ScanTable(age, EMPTY.ssids, EMPTY.authTypes, 0);
+            }
+            return new ScanTable(age, ssids, authTypes, size);
+        }
+    }
+
+    private ScanTable(short age, String[] ssids, short[] authTypes, int size) {
+        this.age = age;
+        this.ssids = ssids;
+        this.authTypes = authTypes;
+        this.size = size;
+    }
+
+    /**
+     * Decode a received scan, interning the SSIDs with the default interner
+     *
+     * @param scanInfo the scan, may be null
+     * @return the table of the scan, empty if the scan is null
+     */
+    public static ScanTable fromScanInfo(ScanInfo scanInfo) {
+        return fromScanInfo(scanInfo, SsidInterner.getDefault());
+    }
+
+    /**
+     * Decode a received scan
+     *
+     * @param scanInfo the scan, may be null
+     * @param interner interns the SSIDs, or null not to intern them
+     * @return the table of the scan, empty if the scan is null
+     */
+    public static ScanTable fromScanInfo(ScanInfo scanInfo, SsidInterner interner) {
+        if (scanInfo == null) {
+            return EMPTY;
+        }
+        MyScanResult[] scanResults = scanInfo.getScanResults();
+        int count = scanResults != null ? scanResults.length : 0;
+        Builder builder = new Builder(count, interner).setAge(scanInfo.getAge());
+        for (int i = 0; i < count; i++) {
+            MyScanResult scanResult = scanResults[i];
+            if (scanResult != null) {
+                builder.add(scanResult.m_ssid, scanResult.m_authType);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Encode the table for GetScanInfo
+     *
+     * @return a new ScanInfo holding the entries of the table
+     */
+    public ScanInfo toScanInfo() {
+        MyScanResult[] scanResults = new MyScanResult[size];
+        for (int i = 0; i < size; i++) {
+            MyScanResult scanResult = new MyScanResult();
+            scanResult.m_ssid = ssids[i];
+            scanResult.m_authType = authTypes[i];
+            scanResults[i] = scanResult;
+        }
+        ScanInfo scanInfo = new ScanInfo();
+        scanInfo.setAge(age);
+        scanInfo.setScanResult(scanResults);
+        return scanInfo;
+    }
+
+    /**
+     * @return how long ago the scan was performed, in minutes
+     */
+    public short getAge() {
+        return age;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of the entry
+     * @return the SSID of the entry
+     */
+    public String getSsid(int index) {
+        checkIndex(index);
+        return ssids[index];
+    }
+
+    /**
+     * @param index the index of the entry
+     * @return the authentication type id of the entry
+     */
+    public short getAuthType(int index) {
+        checkIndex(index);
+        return authTypes[index];
+    }
+
+    /**
+     * @param index the index of the entry
+     * @return the authentication type of the entry, or null if its id is unknown
+     */
+    public AuthType getAuthTypeEnum(int index) {
+        return AuthType.getAuthTypeById(getAuthType(index));
+    }
+
+    /**
+     * @param ssid the SSID to look for
+     * @return the index of the first entry with the SSID, or -1 if none
+     */
+    public int indexOf(String ssid) {
+        if (ssid == null) {
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            // interned SSIDs usually match by reference
+            if (ssids[i] == ssid || ssid.equals(ssids[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
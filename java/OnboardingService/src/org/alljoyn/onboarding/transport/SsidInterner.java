@@ -0,0 +1,145 @@
+/******************************************************************************
+ * Copyright (c) 2014, AllSeen Alliance. All rights reserved.
+ *
+ *    Permission to use, copy, modify, and/or distribute this software for any
+ *    purpose with or without fee is hereby granted, provided that the above
+ *    copyright notice and this permission notice appear in all copies.
+ *
+ *    THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ *    WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ *    MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR
+ *    ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ *    WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ *    ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF
+ *    OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ ******************************************************************************/
+
+
+package org.alljoyn.onboarding.transport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Shares the SSID strings of successive Wi-Fi scans, so that an SSID seen in
+ * many scans is held by a single String. The pool is bounded: beyond its
+ * capacity, SSIDs are evicted in second-chance order, so that the SSIDs found
+ * again since they were pooled outlive the ones seen once.
+ */
+public class SsidInterner {
+
+    /**
+     * Default number of SSIDs held by the pool {@value #DEFAULT_CAPACITY}
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    /**
+     * A pooled SSID
+     */
+    private static final class Entry {
+        final String ssid;
+
+        /**
+         * Set when the SSID is found in the pool, cleared when the eviction
+         * passes over it
+         */
+        volatile boolean isReferenced = false;
+
+        Entry(String ssid) {
+            this.ssid = ssid;
+        }
+    }
+
+    /**
+     * The interner shared by default
+     */
+    private static final SsidInterner defaultInterner = new SsidInterner(DEFAULT_CAPACITY);
+
+    /**
+     * Maximal number of SSIDs held by the pool
+     */
+    private final int capacity;
+
+    /**
+     * The pooled SSIDs
+     */
+    private final ConcurrentHashMap<String, Entry> pool = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * The pooled SSIDs in eviction order
+     */
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+
+    /**
+     * @return the interner shared by default
+     */
+    public static SsidInterner getDefault() {
+        return defaultInterner;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity maximal number of SSIDs held by the pool
+     */
+    public SsidInterner(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get the pooled String equal to the SSID, pooling the SSID if needed
+     *
+     * @param ssid the SSID, may be null
+     * @return the pooled SSID, or null if the SSID is null
+     */
+    public String intern(String ssid) {
+        if (ssid == null) {
+            return null;
+        }
+        Entry pooled = pool.get(ssid);
+        if (pooled == null) {
+            Entry entry = new Entry(ssid);
+            pooled = pool.putIfAbsent(ssid, entry);
+            if (pooled == null) {
+                clock.offer(entry);
+                evictIfNeeded();
+                return ssid;
+            }
+        }
+        if (!pooled.isReferenced) {
+            pooled.isReferenced = true;
+        }
+        return pooled.ssid;
+    }
+
+    /**
+     * Evict SSIDs beyond the capacity. A referenced SSID is given a second
+     * chance, at most once per pooled SSID per eviction.
+     */
+    private void evictIfNeeded() {
+        int chances = capacity;
+        while (pool.size() > capacity) {
+            Entry entry = clock.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.isReferenced && chances > 0) {
+                --chances;
+                entry.isReferenced = false;
+                clock.offer(entry);
+            } else {
+                pool.remove(entry.ssid, entry);
+            }
+        }
+    }
+
+    /**
+     * @return number of pooled SSIDs
+     */
+    public int size() {
+        return pool.size();
+    }
+}
@@ -31,12 +31,10 @@ import org.alljoyn.bus.SessionOpts;
 import org.alljoyn.bus.Status;
 import org.alljoyn.bus.Variant;
 import org.alljoyn.bus.alljoyn.DaemonInit;
+import org.alljoyn.onboarding.client.OnboardingAuthListener;
 import org.alljoyn.onboarding.sdk.OnboardingIllegalArgumentException;
 import org.alljoyn.onboarding.sdk.OnboardingIllegalStateException;
 import org.alljoyn.onboarding.sdk.OnboardingManager;
-import org.alljoyn.services.android.security.AuthPasswordHandler;
-import org.alljoyn.services.android.security.SrpAnonymousKeyListener;
-import org.alljoyn.services.android.utils.AndroidLogger;
 import org.alljoyn.services.common.AnnouncementHandler;
 import org.alljoyn.services.common.BusObjectDescription;
 import org.alljoyn.services.common.utils.TransportUtil;
@@ -94,6 +92,12 @@ public class ProtocolManager implements AnnouncementHandler {
      */
     private AboutService aboutService = null;
 
+    /**
+     * Provides the device passwords and caches the master secrets of the
+     * devices. Records the key exchange times.
+     */
+    private OnboardingAuthListener authListener = null;
+
     /**
      * String for Alljoyn daemon to be advertised with.
      */
@@ -180,6 +184,9 @@ public class ProtocolManager implements AnnouncementHandler {
             appId = (UUID) fromVariantMap.get(AboutKeys.ABOUT_APP_ID);
             deviceName = (String) fromVariantMap.get(AboutKeys.ABOUT_DEVICE_NAME);
             Log.i(TAG, "onAnnouncement: ServiceName = " + serviceName + " port = " + port + " deviceId = " + appId.toString() + " deviceName = " + deviceName);
+            if (authListener != null) {
+                authListener.bindAppId(serviceName, appId.toString());
+            }
         } catch (BusException e) {
             e.printStackTrace();
             return;
@@ -268,21 +275,16 @@ public class ProtocolManager implements AnnouncementHandler {
 
             // Add auth listener - needed for OnboardingService secure calls
             String keyStoreFileName = context.getFileStreamPath("alljoyn_keystore").getAbsolutePath();
-            SrpAnonymousKeyListener m_authListener = new SrpAnonymousKeyListener(new AuthPasswordHandler() {
-                private final String TAG = "AlljoynOnAuthPasswordHandler";
-
-                @Override
-                public char[] getPassword(String peerName) {
-                    return DEFAULT_PINCODE.toCharArray();
-                }
-
+            // master secrets are kept in the key store, so that reconnecting
+            // to a device skips the key exchange
+            authListener = new OnboardingAuthListener(busAttachment, DEFAULT_PINCODE.toCharArray()) {
                 @Override
                 public void completed(String mechanism, String authPeer, boolean authenticated) {
-                    Log.d(TAG, "Auth completed: mechanism = " + mechanism + " authPeer= " + authPeer + " --> " + authenticated);
+                    super.completed(mechanism, authPeer, authenticated);
+                    Log.d(TAG, "Auth completed: mechanism = " + mechanism + " authPeer= " + authPeer + " --> " + authenticated + " " + this);
                 }
-
-            }, new AndroidLogger());
-            Status authStatus = busAttachment.registerAuthListener("ALLJOYN_SRP_KEYX ALLJOYN_PIN_KEYX", m_authListener, keyStoreFileName);
+            };
+            Status authStatus = busAttachment.registerAuthListener("ALLJOYN_SRP_KEYX ALLJOYN_PIN_KEYX", authListener, keyStoreFileName);
             if (authStatus != Status.OK) {
                 Log.e(TAG, "Failed to connectToBus");
             }
@@ -34,6 +34,7 @@ import org.alljoyn.bus.Variant;
 import org.alljoyn.bus.alljoyn.DaemonInit;
 import org.alljoyn.onboarding.OnboardingService.AuthType;
 import org.alljoyn.onboarding.client.OnboardingClientImpl;
+import org.alljoyn.onboarding.client.ScanInfoCache;
 import org.alljoyn.onboarding.transport.OBLastError;
 import org.alljoyn.onboarding.transport.OnboardingTransport.ConfigureWifiMode;
 import org.alljoyn.onboarding.transport.ScanInfo;
@@ -77,6 +78,7 @@ public class OnboardingApplication extends Application implements AuthPasswordHa
 	private HashMap<String, SoftAPDetails> m_devicesMap;
 	private AboutService m_aboutClient;
 	private SoftAPDetails m_currentPeer;
+	private final ScanInfoCache m_scanInfoCache = new ScanInfoCache();
 	private String m_realmName;
 	private BroadcastReceiver m_receiver;
 
@@ -508,7 +510,7 @@ public class OnboardingApplication extends Application implements AuthPasswordHa
 			if(!m_onboardingClient.isConnected()){
 				m_onboardingClient.connect();
 			}
-			scanInfo = m_onboardingClient.getScanInfo();
+			scanInfo = m_scanInfoCache.getScanInfo(m_currentPeer.appId, m_onboardingClient);
 
 		} catch (Exception e){
 			e.printStackTrace();